@@ -0,0 +1,112 @@
+package hu.ait.android.minesweeper;
+
+import android.graphics.Color;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.IOException;
+
+import hu.ait.android.minesweeper.model.ChunkedBoard;
+import hu.ait.android.minesweeper.model.EndlessHolder;
+import hu.ait.android.minesweeper.view.EndlessView;
+
+/**
+ * Plays the endless board: a viewport that scrolls over a board without edges, whose chunks
+ * are generated as they come into view and saved to the app's files when evicted.
+ */
+public class EndlessActivity extends AppCompatActivity {
+
+    /**
+     * Directory under the app's files where the board's chunks are saved
+     */
+    public static final String CHUNK_DIRECTORY = "endless";
+
+    private EndlessView endlessView;
+    private Button flagModeButton;
+    private TextView revealedText;
+
+    /**
+     * True once the loss of the current board was announced
+     */
+    private boolean lossShown = false;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        EndlessHolder.start(getChunkDirectory());
+        setContentView(R.layout.activity_endless);
+
+        endlessView = (EndlessView) findViewById(R.id.endlessBoard);
+        revealedText = (TextView) findViewById(R.id.tvRevealed);
+        flagModeButton = (Button) findViewById(R.id.btnEndlessFlagMode);
+        flagModeButton.setBackgroundColor(Color.WHITE);
+        lossShown = EndlessHolder.getBoard().isLost();
+
+        flagModeButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                EndlessHolder.getBoard().toggleFlagMode();
+                updateFlagModeButton();
+            }
+        });
+
+        Button newBoardButton = (Button) findViewById(R.id.btnEndlessRestart);
+        newBoardButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                EndlessHolder.restart(getChunkDirectory());
+                lossShown = false;
+                flagModeButton.setBackgroundColor(Color.WHITE);
+                endlessView.showNewBoard();
+                onBoardChanged();
+            }
+        });
+
+        onBoardChanged();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        try {
+            EndlessHolder.save();
+        } catch (IOException e) {
+            // The board is still in memory, and is saved again the next time the game is paused
+        }
+    }
+
+    private File getChunkDirectory() {
+        return new File(getFilesDir(), CHUNK_DIRECTORY);
+    }
+
+    private void updateFlagModeButton() {
+        if (EndlessHolder.getBoard().isFlagModeOn()) {
+            flagModeButton.setBackgroundColor(Color.RED);
+            showToastMessage(getString(R.string.flagModeOn));
+        } else {
+            flagModeButton.setBackgroundColor(Color.WHITE);
+            showToastMessage(getString(R.string.flagModeOff));
+        }
+    }
+
+    /**
+     * Updates the revealed count after a move, and announces a loss once
+     */
+    public void onBoardChanged() {
+        ChunkedBoard board = EndlessHolder.getBoard();
+        revealedText.setText(getString(R.string.endlessRevealed, board.getRevealedCount()));
+        if (board.isLost() && !lossShown) {
+            lossShown = true;
+            showToastMessage(getString(R.string.lostMessage));
+        }
+    }
+
+    public void showToastMessage(String msg) {
+        Toast.makeText(this, msg, Toast.LENGTH_LONG).show();
+    }
+}
@@ -5,30 +5,72 @@ import android.graphics.Color;
 import android.support.design.widget.Snackbar;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.os.Handler;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 
+import hu.ait.android.minesweeper.model.GameClock;
+import hu.ait.android.minesweeper.model.GameHolder;
+import hu.ait.android.minesweeper.model.GameSnapshot;
 import hu.ait.android.minesweeper.model.MinesweeperModel;
+import hu.ait.android.minesweeper.statistics.StatisticsHolder;
 import hu.ait.android.minesweeper.view.MinesweeperView;
 
 public class MainActivity extends AppCompatActivity {
 
-    private Timer t;
+    /**
+     * File in the app's private storage the game is saved to whenever the activity stops
+     */
+    private static final String SNAPSHOT_FILE = "game.snapshot";
+
+    /**
+     * Runs the timer label's callback on the UI thread
+     */
+    private final Handler timerHandler = new Handler();
+
+    /**
+     * Shows the game time and, while the clock runs, posts itself again for when the shown
+     * second changes
+     */
+    private final Runnable timerCallback = new Runnable() {
+        @Override
+        public void run() {
+            GameClock clock = GameHolder.getGame().getClock();
+            timerText.setText(String.valueOf(clock.getElapsedSeconds()));
+            if (clock.isRunning()) {
+                timerHandler.postDelayed(this, clock.getMillisUntilNextSecond());
+            }
+        }
+    };
+
     private TextView timerText;
     private MinesweeperView gameBoard;
     private ScrollView layoutContent;
     private Button flagModeButton;
     private Button restartButton;
+    private Button replayButton;
+    private Button undoButton;
+    private Button redoButton;
+    private Button hintButton;
+    private Button oddsButton;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+
+        // After the process was killed the activity comes back without a game, so the saved
+        // one is restored before the view reads it
+        if (!GameHolder.hasGame()) {
+            restoreGame();
+        }
         setContentView(R.layout.activity_main);
 
         gameBoard = (MinesweeperView) findViewById(R.id.gameBoard);
@@ -36,6 +78,16 @@ public class MainActivity extends AppCompatActivity {
         timerText = (TextView) findViewById(R.id.gameTimer);
         restartButton = (Button) findViewById(R.id.btnRestart);
         restartButton.setBackgroundColor(Color.WHITE);
+        replayButton = (Button) findViewById(R.id.btnReplay);
+        replayButton.setBackgroundColor(Color.WHITE);
+        undoButton = (Button) findViewById(R.id.btnUndo);
+        undoButton.setBackgroundColor(Color.WHITE);
+        redoButton = (Button) findViewById(R.id.btnRedo);
+        redoButton.setBackgroundColor(Color.WHITE);
+        hintButton = (Button) findViewById(R.id.btnHint);
+        hintButton.setBackgroundColor(Color.WHITE);
+        oddsButton = (Button) findViewById(R.id.btnOdds);
+        oddsButton.setBackgroundColor(Color.WHITE);
         flagModeButton = (Button) findViewById(R.id.btnFlagMode);
         updateFlagModeButton();
 
@@ -43,7 +95,7 @@ public class MainActivity extends AppCompatActivity {
         flagModeButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                MinesweeperModel.getInstance().toggleFlagMode();
+                GameHolder.getGame().toggleFlagMode();
                 updateFlagModeButton();
             }
         });
@@ -52,14 +104,71 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onClick(View v) {
                 gameBoard.clearScreen();
+                updateTimer();
+            }
+        });
+
+        // The first press restarts the recorded game, every further press shows its next move
+        replayButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (!gameBoard.isReplaying()) {
+                    if (!gameBoard.startReplay()) {
+                        showToastMessage(getString(R.string.replayEmpty));
+                    }
+                } else if (!gameBoard.stepReplay()) {
+                    showToastMessage(getString(R.string.replayFinished));
+                }
             }
         });
 
-        setupTimer();
+        undoButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                MinesweeperModel game = GameHolder.getGame();
+                if (game.isLost() || game.isWon()) {
+                    showToastMessage(getString(R.string.undoFinished));
+                } else if (!gameBoard.undoMove()) {
+                    showToastMessage(getString(R.string.undoEmpty));
+                }
+            }
+        });
+
+        redoButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (!gameBoard.redoMove()) {
+                    showToastMessage(getString(R.string.redoEmpty));
+                }
+            }
+        });
+
+        hintButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (!gameBoard.showHint()) {
+                    // Part of the board may have been too large to solve
+                    showToastMessage(getString(GameHolder.getSolver().isComplete()
+                            ? R.string.hintNone : R.string.hintIncomplete));
+                }
+            }
+        });
+
+        // Tints every unrevealed field by its chance of holding a mine
+        oddsButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                boolean on = !gameBoard.isProbabilityOverlayOn();
+                oddsButton.setBackgroundColor(on ? Color.RED : Color.WHITE);
+                if (!gameBoard.setProbabilityOverlay(on)) {
+                    showToastMessage(getString(R.string.oddsApproximate));
+                }
+            }
+        });
     }
 
     private void updateFlagModeButton() {
-        if (MinesweeperModel.getInstance().isFlagModeOn()) {
+        if (GameHolder.getGame().isFlagModeOn()) {
             flagModeButton.setBackgroundColor(Color.RED);
             showToastMessage(getString(R.string.flagModeOn));
         } else {
@@ -87,30 +196,82 @@ public class MainActivity extends AppCompatActivity {
         ).show();
     }
 
-    public void setupTimer() {
-        t = new Timer();
+    /**
+     * Shows the game time now and schedules the next update. Called whenever a move may have
+     * started or stopped the game's clock.
+     */
+    public void updateTimer() {
+        timerHandler.removeCallbacks(timerCallback);
+        timerCallback.run();
+    }
+
+    /**
+     * Adds the game to the statistics once it is won or lost
+     */
+    public void recordFinishedGame() {
+        try {
+            StatisticsHolder.recordIfFinished(GameHolder.getGame(), getFilesDir());
+        } catch (IOException e) {
+            // Losing one game from the statistics is better than interrupting the player
+        }
+    }
 
+    /**
+     * Saves the game to a temporary file first, so a failed save never replaces a good one
+     */
+    private void saveGame() {
+        File snapshotFile = new File(getFilesDir(), SNAPSHOT_FILE);
+        File tempFile = new File(getFilesDir(), SNAPSHOT_FILE + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(tempFile);
+            try {
+                GameSnapshot.write(GameHolder.getGame(), out.getChannel());
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(snapshotFile)) {
+                throw new IOException("Could not replace the saved game");
+            }
+        } catch (IOException e) {
+            // Keep the previous save, if there is one
+            tempFile.delete();
+        }
+    }
 
-        t.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                runOnUiThread(new Runnable() {
-                    public void run() {
-                        if (!MinesweeperModel.getInstance().isWon() &&
-                                !MinesweeperModel.getInstance().isLost()) {
-                            MinesweeperModel.getInstance().incrementTimeCounter();
-                            timerText.setText(String.valueOf(MinesweeperModel.getInstance().getTimeCounter()));
-                        }
-                    }
-                });
+    private void restoreGame() {
+        File snapshotFile = new File(getFilesDir(), SNAPSHOT_FILE);
+        if (!snapshotFile.exists()) {
+            return;
+        }
+        try {
+            FileInputStream in = new FileInputStream(snapshotFile);
+            try {
+                GameSnapshot.read(GameHolder.getGame(), in.getChannel());
+            } finally {
+                in.close();
             }
-        }, 1000, 1000);
+        } catch (IOException e) {
+            // An unreadable save just means a new game
+            snapshotFile.delete();
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // A replay keeps the game in progress, and its clock, stopped until it is over
+        if (!gameBoard.isReplaying()) {
+            GameHolder.getGame().resumeClock();
+        }
+        updateTimer();
     }
 
     @Override
     protected void onStop() {
         super.onStop();
         //Stops the timer when the activity stops
-        t.cancel();
+        timerHandler.removeCallbacks(timerCallback);
+        GameHolder.getGame().pauseClock();
+        saveGame();
     }
 }
@@ -7,7 +7,7 @@ import android.support.v7.app.AppCompatActivity;
 import android.view.View;
 import android.widget.Button;
 
-import hu.ait.android.minesweeper.model.MinesweeperModel;
+import hu.ait.android.minesweeper.model.GameHolder;
 import hu.ait.android.minesweeper.view.MinesweeperView;
 
 public class MenuActivity extends AppCompatActivity{
@@ -18,13 +18,16 @@ public class MenuActivity extends AppCompatActivity{
      * 1 = easy
      * 2 = medium
      * 3 = difficult
+     * 4 = expert without guessing
      */
     public int gameDifficulty = 0;
 
     private Button btnEasy;
     private Button btnMedium;
     private Button btnDifficult;
+    private Button btnNoGuess;
     private Button btnPlay;
+    private Button btnEndless;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -37,14 +40,19 @@ public class MenuActivity extends AppCompatActivity{
         btnMedium.setBackgroundColor(Color.WHITE);
         btnDifficult = (Button) findViewById(R.id.btnDifficult);
         btnDifficult.setBackgroundColor(Color.WHITE);
+        btnNoGuess = (Button) findViewById(R.id.btnNoGuess);
+        btnNoGuess.setBackgroundColor(Color.WHITE);
         btnPlay = (Button) findViewById(R.id.btnPlay);
         btnPlay.setBackgroundColor(Color.WHITE);
+        btnEndless = (Button) findViewById(R.id.btnEndless);
+        btnEndless.setBackgroundColor(Color.WHITE);
 
         btnEasy.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 btnMedium.setBackgroundColor(Color.WHITE);
                 btnDifficult.setBackgroundColor(Color.WHITE);
+                btnNoGuess.setBackgroundColor(Color.WHITE);
                 btnEasy.setBackgroundColor(Color.RED);
                 btnPlay.setBackgroundColor(Color.GREEN);
                 gameDifficulty = 1;
@@ -56,6 +64,7 @@ public class MenuActivity extends AppCompatActivity{
             public void onClick(View v) {
                 btnEasy.setBackgroundColor(Color.WHITE);
                 btnDifficult.setBackgroundColor(Color.WHITE);
+                btnNoGuess.setBackgroundColor(Color.WHITE);
                 btnMedium.setBackgroundColor(Color.RED);
                 btnPlay.setBackgroundColor(Color.GREEN);
 
@@ -68,6 +77,7 @@ public class MenuActivity extends AppCompatActivity{
             public void onClick(View v) {
                 btnEasy.setBackgroundColor(Color.WHITE);
                 btnMedium.setBackgroundColor(Color.WHITE);
+                btnNoGuess.setBackgroundColor(Color.WHITE);
                 btnDifficult.setBackgroundColor(Color.RED);
                 btnPlay.setBackgroundColor(Color.GREEN);
                 gameDifficulty = 3;
@@ -75,11 +85,23 @@ public class MenuActivity extends AppCompatActivity{
             }
         });
 
+        btnNoGuess.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                btnEasy.setBackgroundColor(Color.WHITE);
+                btnMedium.setBackgroundColor(Color.WHITE);
+                btnDifficult.setBackgroundColor(Color.WHITE);
+                btnNoGuess.setBackgroundColor(Color.RED);
+                btnPlay.setBackgroundColor(Color.GREEN);
+                gameDifficulty = 4;
+            }
+        });
+
         btnPlay.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 if (gameDifficulty != 0) {
-                    MinesweeperModel.getInstance().setGameDifficulty(gameDifficulty);
+                    GameHolder.getGame().setGameDifficulty(gameDifficulty);
                     Intent intentStartGame = new Intent(
                             MenuActivity.this, MainActivity.class
                     );
@@ -90,7 +112,24 @@ public class MenuActivity extends AppCompatActivity{
             }
         });
 
+        btnEndless.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                Intent intentStartEndless = new Intent(
+                        MenuActivity.this, EndlessActivity.class
+                );
+                startActivity(intentStartEndless);
+            }
+        });
 
+    }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Leaving the menu closes the app, so stop searching no-guess layouts in the background
+        if (isFinishing()) {
+            GameHolder.shutdown();
+        }
     }
 }
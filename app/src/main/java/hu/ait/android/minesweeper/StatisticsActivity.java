@@ -1,16 +1,33 @@
 package hu.ait.android.minesweeper;
 
+import android.content.Intent;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
 import android.widget.TextView;
 
+import java.io.IOException;
+import java.util.Locale;
+
+import hu.ait.android.minesweeper.metrics.LogLinearHistogram;
+import hu.ait.android.minesweeper.metrics.Metrics;
+import hu.ait.android.minesweeper.model.GameHolder;
 import hu.ait.android.minesweeper.model.MinesweeperModel;
+import hu.ait.android.minesweeper.statistics.StatisticsHolder;
+import hu.ait.android.minesweeper.statistics.StatisticsStore;
 
 public class StatisticsActivity extends AppCompatActivity {
     private TextView gameTimeText;
     private TextView minesFoundText;
     private TextView numbersFoundText;
     private TextView emptysFoundText;
+    private TextView historyStatText;
+    private CheckBox perfEnableBox;
+    private TextView perfStatText;
+    private Button perfExportButton;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -23,13 +40,114 @@ public class StatisticsActivity extends AppCompatActivity {
         emptysFoundText = (TextView) findViewById(R.id.emptyStatText);
 
         gameTimeText.setText(getString(R.string.gameTimeLabel,
-                MinesweeperModel.getInstance().getTimeCounter()));
+                GameHolder.getGame().getTimeCounter()));
         minesFoundText.setText(getString(R.string.gameMinesLabel,
-                MinesweeperModel.getInstance().gameBoardCounter(MinesweeperModel.FLAG)));
+                GameHolder.getGame().gameBoardCounter(MinesweeperModel.FLAG)));
         numbersFoundText.setText(getString(R.string.gameNumbersLabel,
-                MinesweeperModel.getInstance().gameBoardCounter(MinesweeperModel.NUMBER)));
+                GameHolder.getGame().gameBoardCounter(MinesweeperModel.NUMBER)));
         emptysFoundText.setText(getString(R.string.gameEmptysLabel,
-                MinesweeperModel.getInstance().gameBoardCounter(MinesweeperModel.EMPTY)));
+                GameHolder.getGame().gameBoardCounter(MinesweeperModel.EMPTY)));
+
+        historyStatText = (TextView) findViewById(R.id.historyStatText);
+        showHistory();
+
+        perfEnableBox = (CheckBox) findViewById(R.id.perfEnableBox);
+        perfStatText = (TextView) findViewById(R.id.perfStatText);
+        perfExportButton = (Button) findViewById(R.id.btnPerfExport);
+
+        perfEnableBox.setChecked(Metrics.isEnabled());
+        perfEnableBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                Metrics.setEnabled(isChecked);
+            }
+        });
+
+        perfExportButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                Intent intentSend = new Intent(Intent.ACTION_SEND);
+                intentSend.setType("text/plain");
+                intentSend.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.perfLabel));
+                intentSend.putExtra(Intent.EXTRA_TEXT, Metrics.dump());
+                startActivity(Intent.createChooser(intentSend, getString(R.string.perfExportLabel)));
+            }
+        });
+
+        showPerformance();
+    }
+
+    /**
+     * Shows the totals and best times of every difficulty played, straight from the store's
+     * aggregates
+     */
+    private void showHistory() {
+        StatisticsStore store;
+        try {
+            store = StatisticsHolder.getStore(getFilesDir());
+        } catch (IOException e) {
+            historyStatText.setText(R.string.historyUnavailable);
+            return;
+        }
+        String[] difficultyNames = {
+                getString(R.string.customLabel), getString(R.string.easyLabel), getString(R.string.mediumLabel),
+                getString(R.string.difficultLabel), getString(R.string.noGuessLabel)
+        };
+        StringBuilder text = new StringBuilder();
+        for (int difficulty = 1; difficulty <= StatisticsStore.DIFFICULTIES; difficulty++) {
+            // Custom boards come last
+            int i = difficulty % StatisticsStore.DIFFICULTIES;
+            StatisticsStore.Aggregate aggregate = store.getAggregate(i);
+            if (aggregate.getGamesPlayed() == 0) {
+                continue;
+            }
+            text.append(getString(R.string.historyLine, difficultyNames[i], aggregate.getGamesPlayed(),
+                    aggregate.getGamesWon(), formatSeconds(aggregate.getAverageWinMillis()))).append('\n');
+            int[] bestTimes = aggregate.getBestTimes();
+            if (bestTimes.length > 0) {
+                StringBuilder best = new StringBuilder();
+                for (int rank = 0; rank < bestTimes.length; rank++) {
+                    if (rank > 0) {
+                        best.append(", ");
+                    }
+                    best.append(formatSeconds(bestTimes[rank]));
+                }
+                text.append(getString(R.string.historyBestLine, best)).append('\n');
+            }
+        }
+        if (text.length() == 0) {
+            historyStatText.setText(R.string.historyEmpty);
+        } else {
+            historyStatText.setText(text);
+        }
+    }
+
+    private static String formatSeconds(long millis) {
+        return String.format(Locale.US, "%.3f s", millis / 1000.0);
+    }
+
+    /**
+     * Shows the p50, p99 and max of every histogram recorded so far
+     */
+    private void showPerformance() {
+        StringBuilder text = new StringBuilder();
+        for (LogLinearHistogram histogram : Metrics.getHistograms()) {
+            text.append(getString(R.string.perfLine, histogram.getName(),
+                    formatValue(histogram, histogram.getValueAtPercentile(50)),
+                    formatValue(histogram, histogram.getValueAtPercentile(99)),
+                    formatValue(histogram, histogram.getMax()),
+                    histogram.getTotalCount())).append('\n');
+        }
+        perfStatText.setText(text);
+    }
 
+    /**
+     * Shows durations in milliseconds and everything else as it was recorded
+     */
+    private static String formatValue(LogLinearHistogram histogram, long value) {
+        if ("ns".equals(histogram.getUnit())) {
+            return String.format(Locale.US, "%.3f ms", value / 1e6);
+        }
+        return value + " " + histogram.getUnit();
     }
 }
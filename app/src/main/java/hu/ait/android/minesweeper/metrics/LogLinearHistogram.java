@@ -0,0 +1,138 @@
+package hu.ait.android.minesweeper.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative long values in a fixed array of log-linear buckets: values below
+ * 16 get a bucket each, and every power of two above is split into 16 equal buckets. Any
+ * percentile is then within 1/16 of the true value, recording is a few bit operations on a
+ * preallocated array, and the histogram never grows.
+ *
+ * Concurrency: not thread-safe. Record from a single thread, such as the UI thread.
+ */
+public class LogLinearHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Enough buckets for every positive long
+     */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final String unit;
+    private final long[] counts = new long[BUCKETS];
+    private long totalCount = 0;
+    private long max = 0;
+
+    /**
+     * @param name name of the measured operation, shown in reports
+     * @param unit unit of the recorded values, shown in reports
+     */
+    public LogLinearHistogram(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    /**
+     * Adds a value. Negative values are recorded as 0.
+     *
+     * @param value the value to add
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketOf(value)]++;
+        totalCount++;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value in the bucket
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + bucket % SUB_BUCKETS) * width + width - 1;
+    }
+
+    /**
+     * Gets the value at the given percentile, rounded up to its bucket's highest value but never
+     * above the largest value recorded
+     *
+     * @param percentile between 0 and 100
+     * @return the value, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(bucket), max);
+            }
+        }
+        return max;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * Forgets every value
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        max = 0;
+    }
+
+    /**
+     * Appends the summary line and every non-empty bucket, as "highest value: count" lines
+     *
+     * @param out where to write the dump
+     */
+    public void dump(StringBuilder out) {
+        out.append(name).append(" (").append(unit).append("): count ").append(totalCount)
+                .append(", p50 ").append(getValueAtPercentile(50))
+                .append(", p99 ").append(getValueAtPercentile(99))
+                .append(", max ").append(max).append('\n');
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (counts[bucket] != 0) {
+                out.append("  <= ").append(highestValueOf(bucket)).append(": ").append(counts[bucket]).append('\n');
+            }
+        }
+    }
+}
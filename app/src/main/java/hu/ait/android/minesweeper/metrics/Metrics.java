@@ -0,0 +1,137 @@
+package hu.ait.android.minesweeper.metrics;
+
+/**
+ * Latency and size histograms of the game's hot paths, off by default. While off, each
+ * instrumented operation only reads one static boolean; while on, it reads System.nanoTime and
+ * bumps a counter in a preallocated histogram, so nothing is allocated either way.
+ *
+ * Concurrency: the histograms are not thread-safe, so only the UI thread records into them:
+ * the view, and the game held by GameHolder, which is the only instrumented game. Games on
+ * other threads, such as the no-guess search's, the server's or the simulator's, never record.
+ * Records only reach the histograms while recording is enabled.
+ */
+public class Metrics {
+
+    /**
+     * Duration of MinesweeperModel.onTouchHandler
+     */
+    public static final LogLinearHistogram TOUCH_NANOS = new LogLinearHistogram("onTouchHandler", "ns");
+
+    /**
+     * Duration of each reveal cascade, the opening revealed around an empty field
+     */
+    public static final LogLinearHistogram CASCADE_NANOS = new LogLinearHistogram("reveal cascade", "ns");
+
+    /**
+     * Fields revealed by each reveal cascade
+     */
+    public static final LogLinearHistogram CASCADE_CELLS = new LogLinearHistogram("cascade size", "fields");
+
+    /**
+     * Duration of MinesweeperView.onDraw
+     */
+    public static final LogLinearHistogram DRAW_NANOS = new LogLinearHistogram("onDraw", "ns");
+
+    /**
+     * Bitmaps created for each frame drawn
+     */
+    public static final LogLinearHistogram FRAME_BITMAPS = new LogLinearHistogram("bitmaps per frame", "bitmaps");
+
+    private static final LogLinearHistogram[] HISTOGRAMS = {
+            TOUCH_NANOS, CASCADE_NANOS, CASCADE_CELLS, DRAW_NANOS, FRAME_BITMAPS
+    };
+
+    private static boolean enabled = false;
+
+    /**
+     * Bitmaps created since the last frame
+     */
+    private static int bitmapsSinceFrame = 0;
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * @return the start time of an operation to pass to recordSince, or 0 if instrumentation is off.
+     * Passing 0 to recordSince records nothing, so the start of an uninstrumented operation is 0.
+     */
+    public static long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time since the given start of an operation
+     *
+     * @param histogram where to record the duration
+     * @param startNanos value startTimer returned when the operation started
+     */
+    public static void recordSince(LogLinearHistogram histogram, long startNanos) {
+        if (enabled && startNanos != 0) {
+            histogram.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Records a value, if instrumentation is on
+     */
+    public static void record(LogLinearHistogram histogram, long value) {
+        if (enabled) {
+            histogram.record(value);
+        }
+    }
+
+    /**
+     * Counts a bitmap created, to be attributed to the next frame drawn
+     */
+    public static void countBitmap() {
+        if (enabled) {
+            bitmapsSinceFrame++;
+        }
+    }
+
+    /**
+     * Records the bitmaps created since the previous frame, at the end of drawing a frame
+     */
+    public static void endFrame() {
+        if (enabled) {
+            FRAME_BITMAPS.record(bitmapsSinceFrame);
+            bitmapsSinceFrame = 0;
+        }
+    }
+
+    /**
+     * @return every histogram, in the order they are reported in
+     */
+    public static LogLinearHistogram[] getHistograms() {
+        return HISTOGRAMS.clone();
+    }
+
+    /**
+     * Forgets everything recorded
+     */
+    public static void reset() {
+        for (LogLinearHistogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+        bitmapsSinceFrame = 0;
+    }
+
+    /**
+     * @return a text dump of every histogram, with its buckets
+     */
+    public static String dump() {
+        StringBuilder out = new StringBuilder();
+        for (LogLinearHistogram histogram : HISTOGRAMS) {
+            histogram.dump(out);
+        }
+        return out.toString();
+    }
+}
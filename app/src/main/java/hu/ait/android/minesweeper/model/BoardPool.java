@@ -0,0 +1,201 @@
+package hu.ait.android.minesweeper.model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Bounded pool of cleared game boards for one board size, so restarting a game takes a ready
+ * board in constant time instead of clearing or allocating one on the UI thread.
+ *
+ * A low-priority worker thread keeps the pool topped up: it clears the boards of finished
+ * games handed back with recycle, and allocates new ones when there are not enough. The number
+ * of boards kept is limited by a memory budget. Changing the board size or number of mines
+ * flushes the pool.
+ *
+ * All methods are thread-safe.
+ */
+public class BoardPool {
+
+    /**
+     * Most boards kept ready, however small they are
+     */
+    public static final int MAX_BOARDS = 4;
+
+    /**
+     * Storage of one game board, cleared when it comes out of the pool
+     */
+    static class Board {
+        final int generation;
+        final byte[] fields;
+        final MineIndex mineIndex;
+
+        Board(int generation, byte[] fields, MineIndex mineIndex) {
+            this.generation = generation;
+            this.fields = fields;
+            this.mineIndex = mineIndex;
+        }
+    }
+
+    private final long memoryBudgetBytes;
+
+    // Board parameters the pool currently holds boards for
+    private int width;
+    private int height;
+    private int mines;
+
+    /**
+     * Incremented on every flush, so boards made for earlier parameters are dropped
+     */
+    private int generation = 0;
+
+    /**
+     * Number of boards the memory budget allows for the current parameters
+     */
+    private int capacity = 0;
+
+    private final ArrayDeque<Board> ready = new ArrayDeque<Board>();
+    private final ArrayDeque<Board> used = new ArrayDeque<Board>();
+
+    private Thread worker;
+
+    /**
+     * @param memoryBudgetBytes most memory the pooled boards may take together
+     */
+    public BoardPool(long memoryBudgetBytes) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    /**
+     * @return a budget of a sixteenth of the memory the VM may use
+     */
+    public static long defaultMemoryBudget() {
+        return Runtime.getRuntime().maxMemory() / 16;
+    }
+
+    /**
+     * Sets the board parameters to keep boards for. If they changed, every pooled board is
+     * dropped and the worker starts filling the pool for the new ones.
+     *
+     * @param width number of fields wide the game board is
+     * @param height number of fields tall the game board is
+     * @param mines number of mines in the game
+     */
+    public synchronized void configure(int width, int height, int mines) {
+        if (width == this.width && height == this.height && mines == this.mines) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        this.mines = mines;
+        generation++;
+        ready.clear();
+        used.clear();
+
+        long boardBytes = (long) width * height + mineIndexBytes(width * height, mines);
+        capacity = (int) Math.min(MAX_BOARDS, memoryBudgetBytes / boardBytes);
+
+        if (worker == null) {
+            worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    fill();
+                }
+            }, "minesweeper-board-pool");
+            worker.setDaemon(true);
+            worker.setPriority(Thread.MIN_PRIORITY);
+            worker.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Takes a cleared board for the given parameters, without waiting
+     *
+     * @return the board, or null if none is ready or the pool holds boards for other parameters
+     */
+    synchronized Board take(int width, int height, int mines) {
+        if (width != this.width || height != this.height || mines != this.mines) {
+            return null;
+        }
+        Board board = ready.poll();
+        if (board != null) {
+            notifyAll();
+        }
+        return board;
+    }
+
+    /**
+     * Hands back the board of a finished game, to be cleared and reused. Boards made for
+     * earlier parameters, or beyond the pool's capacity, are left to the garbage collector.
+     *
+     * @param board board taken from this pool
+     */
+    synchronized void recycle(Board board) {
+        if (board.generation == generation && ready.size() + used.size() < capacity) {
+            used.add(board);
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return number of boards ready to be taken
+     */
+    public synchronized int getReadyCount() {
+        return ready.size();
+    }
+
+    /**
+     * @return most boards the pool keeps for the current parameters
+     */
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Worker loop: waits until the pool is short of boards, then clears a used board or
+     * allocates a new one outside the lock
+     */
+    private void fill() {
+        while (true) {
+            Board dirty;
+            int boardGeneration;
+            int numberOfCells;
+            int boardMines;
+            synchronized (this) {
+                while (ready.size() >= capacity) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                dirty = used.poll();
+                boardGeneration = generation;
+                numberOfCells = width * height;
+                boardMines = mines;
+            }
+
+            Board board;
+            if (dirty != null) {
+                Arrays.fill(dirty.fields, (byte) 0);
+                dirty.mineIndex.clear();
+                board = dirty;
+            } else {
+                board = new Board(boardGeneration, new byte[numberOfCells], new MineIndex(numberOfCells, boardMines));
+            }
+
+            synchronized (this) {
+                if (board.generation == generation && ready.size() < capacity) {
+                    ready.add(board);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return rough size of the mine index of a board, whichever layout it picks
+     */
+    private static long mineIndexBytes(int numberOfCells, int mines) {
+        return Math.min(((numberOfCells + 63) >>> 6) * 8L, mines * 8L + 16);
+    }
+}
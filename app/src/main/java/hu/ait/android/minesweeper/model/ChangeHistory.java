@@ -0,0 +1,167 @@
+package hu.ait.android.minesweeper.model;
+
+import java.util.Arrays;
+
+/**
+ * Undo and redo history of a game. For each move it keeps only the fields the move changed,
+ * with their states before and after, and whether the game was lost before and after. Undoing
+ * or redoing a move takes time proportional to the fields it changed, and the history takes
+ * memory proportional to the number of changed fields rather than to the board size.
+ */
+class ChangeHistory {
+
+    // Bits of a move's flags
+    private static final int PLACE_FLAG = 1;
+    private static final int LOST_BEFORE = 1 << 1;
+    private static final int LOST_AFTER = 1 << 2;
+
+    private static final int STATE_BITS = 3;
+    private static final int STATE_MASK = (1 << STATE_BITS) - 1;
+
+    /**
+     * Row-major index of every changed field, grouped by move
+     */
+    private int[] cells = new int[64];
+
+    /**
+     * State of every changed field before the move in the low bits, and after it above them
+     */
+    private byte[] states = new byte[64];
+    private int changeCount = 0;
+
+    // Per move: index of its first change, its coordinates and its flags
+    private int[] moveStarts = new int[16];
+    private int[] moveXs = new int[16];
+    private int[] moveYs = new int[16];
+    private byte[] moveFlags = new byte[16];
+
+    /**
+     * Number of moves kept, the ones after position can be redone
+     */
+    private int moveCount = 0;
+
+    /**
+     * Number of moves currently applied
+     */
+    private int position = 0;
+
+    /**
+     * Forgets every move
+     */
+    void clear() {
+        changeCount = 0;
+        moveCount = 0;
+        position = 0;
+    }
+
+    /**
+     * Starts recording a move, dropping the moves that could have been redone
+     */
+    void beginMove(int x, int y, boolean placeFlag, boolean lostBefore) {
+        changeCount = position == 0 ? 0 : moveEnd(position - 1);
+        moveCount = position;
+        if (moveCount == moveStarts.length) {
+            int length = moveCount * 2;
+            moveStarts = Arrays.copyOf(moveStarts, length);
+            moveXs = Arrays.copyOf(moveXs, length);
+            moveYs = Arrays.copyOf(moveYs, length);
+            moveFlags = Arrays.copyOf(moveFlags, length);
+        }
+        moveStarts[moveCount] = changeCount;
+        moveXs[moveCount] = x;
+        moveYs[moveCount] = y;
+        moveFlags[moveCount] = (byte) ((placeFlag ? PLACE_FLAG : 0) | (lostBefore ? LOST_BEFORE : 0));
+        moveCount++;
+        position = moveCount;
+    }
+
+    /**
+     * Records a field changed by the move being recorded
+     */
+    void recordChange(int cell, int before, int after) {
+        if (changeCount == cells.length) {
+            cells = Arrays.copyOf(cells, changeCount * 2);
+            states = Arrays.copyOf(states, changeCount * 2);
+        }
+        cells[changeCount] = cell;
+        states[changeCount] = (byte) (before | (after << STATE_BITS));
+        changeCount++;
+    }
+
+    /**
+     * Finishes recording a move
+     */
+    void endMove(boolean lostAfter) {
+        if (lostAfter) {
+            moveFlags[moveCount - 1] |= LOST_AFTER;
+        }
+    }
+
+    boolean canUndo() {
+        return position > 0;
+    }
+
+    boolean canRedo() {
+        return position < moveCount;
+    }
+
+    /**
+     * @return index of the move the next undo takes back
+     */
+    int undoMove() {
+        return --position;
+    }
+
+    /**
+     * @return index of the move the next redo applies again
+     */
+    int redoMove() {
+        return position++;
+    }
+
+    /**
+     * @return index of the first change of the move
+     */
+    int moveStart(int move) {
+        return moveStarts[move];
+    }
+
+    /**
+     * @return index after the last change of the move
+     */
+    int moveEnd(int move) {
+        return move + 1 < moveCount ? moveStarts[move + 1] : changeCount;
+    }
+
+    int cell(int change) {
+        return cells[change];
+    }
+
+    short stateBefore(int change) {
+        return (short) (states[change] & STATE_MASK);
+    }
+
+    short stateAfter(int change) {
+        return (short) ((states[change] >>> STATE_BITS) & STATE_MASK);
+    }
+
+    int moveX(int move) {
+        return moveXs[move];
+    }
+
+    int moveY(int move) {
+        return moveYs[move];
+    }
+
+    boolean isPlaceFlag(int move) {
+        return (moveFlags[move] & PLACE_FLAG) != 0;
+    }
+
+    boolean isLostBefore(int move) {
+        return (moveFlags[move] & LOST_BEFORE) != 0;
+    }
+
+    boolean isLostAfter(int move) {
+        return (moveFlags[move] & LOST_AFTER) != 0;
+    }
+}
@@ -0,0 +1,146 @@
+package hu.ait.android.minesweeper.model;
+
+/**
+ * Square piece of an endless game board. A chunk's mines are not stored anywhere: they are
+ * generated from a hash of the board seed and the chunk's coordinates, so the same chunk always
+ * gets the same mines. Only the field states visible to the player need to be saved.
+ */
+public class Chunk {
+
+    /**
+     * log2 of the number of fields along one side of a chunk
+     */
+    public static final int CHUNK_SHIFT = 5;
+
+    /**
+     * Number of fields along one side of a chunk
+     */
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    /**
+     * Number of fields in a chunk
+     */
+    public static final int CHUNK_CELLS = CHUNK_SIZE * CHUNK_SIZE;
+
+    // Chunk coordinates. The chunk covers fields chunkX * CHUNK_SIZE to (chunkX + 1) * CHUNK_SIZE - 1
+    private final int chunkX;
+    private final int chunkY;
+
+    /**
+     * One bit per field, set if the field is a mine, indexed by the row-major field index
+     * inside the chunk
+     */
+    private final long[] mines = new long[CHUNK_CELLS / 64];
+
+    /**
+     * Field states visible to the player, indexed by the row-major field index inside the chunk
+     */
+    private final byte[] fields;
+
+    /**
+     * If true, a field state changed since the chunk was created or loaded
+     */
+    private boolean modified = false;
+
+    /**
+     * Generates the chunk at the given chunk coordinates
+     *
+     * @param seed seed of the board the chunk belongs to
+     * @param chunkX X coordinate of the chunk
+     * @param chunkY Y coordinate of the chunk
+     * @param minesPerChunk number of mines in every chunk
+     * @param savedFields field states saved when the chunk was last evicted, or null if the
+     *                    chunk has never been saved
+     */
+    public Chunk(long seed, int chunkX, int chunkY, int minesPerChunk, byte[] savedFields) {
+        this.chunkX = chunkX;
+        this.chunkY = chunkY;
+        this.fields = savedFields != null ? savedFields : new byte[CHUNK_CELLS];
+        generateMines(seed, minesPerChunk);
+    }
+
+    /**
+     * Places the chunk's mines with Floyd's sampling, driven by a SplitMix64 generator seeded
+     * from the board seed and the chunk coordinates
+     */
+    private void generateMines(long seed, int minesPerChunk) {
+        long state = mix(seed ^ mix(((long) chunkX << 32) | (chunkY & 0xFFFFFFFFL)));
+        for (int j = CHUNK_CELLS - minesPerChunk; j < CHUNK_CELLS; j++) {
+            state += 0x9E3779B97F4A7C15L;
+            int cell = (int) ((mix(state) >>> 33) % (j + 1));
+            if ((mines[cell >>> 6] & (1L << cell)) != 0) {
+                cell = j;
+            }
+            mines[cell >>> 6] |= 1L << cell;
+        }
+    }
+
+    /**
+     * SplitMix64 finalizer, spreading every input bit over the whole output
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Packs chunk coordinates into a single key
+     *
+     * @param chunkX X coordinate of the chunk
+     * @param chunkY Y coordinate of the chunk
+     * @return key unique to the chunk
+     */
+    public static long key(int chunkX, int chunkY) {
+        return ((long) chunkX << 32) | (chunkY & 0xFFFFFFFFL);
+    }
+
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    public int getChunkY() {
+        return chunkY;
+    }
+
+    /**
+     * @param cell row-major field index inside the chunk
+     * @return true if the field is a mine, false otherwise
+     */
+    public boolean isMine(int cell) {
+        return (mines[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * @param cell row-major field index inside the chunk
+     * @return state of the field visible to the player
+     */
+    public short getFieldContent(int cell) {
+        return fields[cell];
+    }
+
+    /**
+     * @param cell row-major field index inside the chunk
+     * @param content updated state of the field
+     */
+    public void setFieldContent(int cell, short content) {
+        if (fields[cell] != content) {
+            fields[cell] = (byte) content;
+            modified = true;
+        }
+    }
+
+    /**
+     * @return the field states, to be saved when the chunk is evicted
+     */
+    public byte[] getFields() {
+        return fields;
+    }
+
+    /**
+     * @return true if a field state changed since the chunk was created or loaded
+     */
+    public boolean isModified() {
+        return modified;
+    }
+}
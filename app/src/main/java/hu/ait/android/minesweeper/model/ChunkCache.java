@@ -0,0 +1,116 @@
+package hu.ait.android.minesweeper.model;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least-recently-used cache of the chunks of an endless board. Chunks are created or
+ * loaded on demand, and the least recently used chunk is saved to the ChunkStore and dropped
+ * once the cache is full, so memory stays bounded however far the player explores.
+ */
+public class ChunkCache {
+
+    private final long seed;
+    private final int minesPerChunk;
+    private final int capacity;
+    private final ChunkStore store;
+
+    /**
+     * Chunks by key, in access order so the eldest entry is the least recently used
+     */
+    private final LinkedHashMap<Long, Chunk> chunks;
+
+    // The last chunk looked up, so runs of lookups in the same chunk skip the map
+    private Chunk lastChunk;
+    private long lastKey;
+
+    /**
+     * @param seed seed of the board, deciding every chunk's mines
+     * @param minesPerChunk number of mines in every chunk
+     * @param capacity largest number of chunks kept in memory
+     * @param store where evicted chunks are saved
+     */
+    public ChunkCache(long seed, int minesPerChunk, int capacity, ChunkStore store) {
+        this.seed = seed;
+        this.minesPerChunk = minesPerChunk;
+        this.capacity = capacity;
+        this.store = store;
+        this.chunks = new LinkedHashMap<Long, Chunk>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Chunk> eldest) {
+                if (size() <= ChunkCache.this.capacity) {
+                    return false;
+                }
+                evict(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gets the chunk at the given chunk coordinates, loading or generating it if it is not in
+     * memory. The returned chunk must not be kept across other calls to the cache, since those
+     * may evict it.
+     *
+     * @param chunkX X coordinate of the chunk
+     * @param chunkY Y coordinate of the chunk
+     * @return the chunk
+     */
+    public Chunk getChunk(int chunkX, int chunkY) {
+        long key = Chunk.key(chunkX, chunkY);
+        if (lastChunk != null && lastKey == key) {
+            return lastChunk;
+        }
+
+        Chunk chunk = chunks.get(key);
+        if (chunk == null) {
+            byte[] savedFields;
+            try {
+                savedFields = store.load(chunkX, chunkY);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not load chunk " + chunkX + "," + chunkY, e);
+            }
+            chunk = new Chunk(seed, chunkX, chunkY, minesPerChunk, savedFields);
+            chunks.put(key, chunk);
+        }
+
+        lastChunk = chunk;
+        lastKey = key;
+        return chunk;
+    }
+
+    /**
+     * @return number of chunks currently in memory
+     */
+    public int size() {
+        return chunks.size();
+    }
+
+    /**
+     * Saves every changed chunk in memory, for when the game is paused
+     */
+    public void flush() {
+        for (Chunk chunk : chunks.values()) {
+            saveIfModified(chunk);
+        }
+    }
+
+    private void evict(Chunk chunk) {
+        if (chunk == lastChunk) {
+            lastChunk = null;
+        }
+        saveIfModified(chunk);
+    }
+
+    private void saveIfModified(Chunk chunk) {
+        if (chunk.isModified()) {
+            try {
+                store.save(chunk);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not save chunk "
+                        + chunk.getChunkX() + "," + chunk.getChunkY(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package hu.ait.android.minesweeper.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Saves the field states of evicted chunks to files in a directory so they can be loaded back
+ * when the player returns to them. Chunks that were never changed are not saved, since they
+ * can be regenerated from the board seed.
+ */
+public class ChunkStore {
+
+    /**
+     * File holding the seed and counters of the board the saved chunks belong to
+     */
+    private static final String BOARD_FILE = "board";
+
+    /**
+     * Suffix of the file a chunk or the board is written to before it replaces the saved one
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Directory holding one file per saved chunk
+     */
+    private final File directory;
+
+    /**
+     * @param directory directory to save chunks in, created if it does not exist
+     */
+    public ChunkStore(File directory) {
+        this.directory = directory;
+        directory.mkdirs();
+    }
+
+    /**
+     * Saves the field states of the given chunk
+     *
+     * @param chunk chunk being evicted
+     * @throws IOException if the chunk file cannot be written
+     */
+    public void save(Chunk chunk) throws IOException {
+        replaceFile(fileFor(chunk.getChunkX(), chunk.getChunkY()), chunk.getFields());
+    }
+
+    /**
+     * Saves the seed and counters of the board, so it can be loaded back together with its
+     * chunks after the process is restarted
+     *
+     * @param board board the saved chunks belong to
+     * @throws IOException if the board file cannot be written
+     */
+    public void saveBoard(ChunkedBoard board) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(board.getSeed());
+        out.writeLong(board.getRevealedCount());
+        out.writeBoolean(board.isLost());
+        out.close();
+        replaceFile(new File(directory, BOARD_FILE), bytes.toByteArray());
+    }
+
+    /**
+     * Loads the board saved with saveBoard, which takes its chunks from this store
+     *
+     * @param mineDensity fraction of fields that are mines
+     * @param cacheCapacity largest number of chunks kept in memory
+     * @return the board, or null if no board was saved
+     * @throws IOException if the board file cannot be read
+     */
+    public ChunkedBoard loadBoard(float mineDensity, int cacheCapacity) throws IOException {
+        File file = new File(directory, BOARD_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            ChunkedBoard board = new ChunkedBoard(in.readLong(), mineDensity, cacheCapacity, this);
+            board.restoreCounters(in.readLong(), in.readBoolean());
+            return board;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Loads the saved field states of the chunk at the given coordinates
+     *
+     * @param chunkX X coordinate of the chunk
+     * @param chunkY Y coordinate of the chunk
+     * @return the saved field states, or null if the chunk was never saved
+     * @throws IOException if the chunk file cannot be read
+     */
+    public byte[] load(int chunkX, int chunkY) throws IOException {
+        File file = fileFor(chunkX, chunkY);
+        if (!file.exists()) {
+            return null;
+        }
+
+        byte[] fields = new byte[Chunk.CHUNK_CELLS];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < fields.length) {
+                int n = in.read(fields, read, fields.length - read);
+                if (n < 0) {
+                    throw new IOException("Truncated chunk file " + file);
+                }
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+        return fields;
+    }
+
+    /**
+     * Deletes every saved chunk and the saved board, for when a new endless board is started
+     */
+    public void clear() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes the file next to the given one and then renames it over it, so a write cut short
+     * leaves the previous contents in place
+     */
+    private void replaceFile(File file, byte[] contents) throws IOException {
+        File tempFile = new File(directory, file.getName() + TEMP_SUFFIX);
+        try {
+            FileOutputStream out = new FileOutputStream(tempFile);
+            try {
+                out.write(contents);
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Could not replace " + file);
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+    }
+
+    private File fileFor(int chunkX, int chunkY) {
+        return new File(directory, "chunk_" + chunkX + "_" + chunkY);
+    }
+}
@@ -0,0 +1,281 @@
+package hu.ait.android.minesweeper.model;
+
+import java.util.Arrays;
+
+/**
+ * Game model for an endless board. The board is split into chunks that are generated from the
+ * board seed when the reveal cascade or a caller such as the view first reaches them, and kept
+ * in a bounded ChunkCache that saves evicted chunks to a ChunkStore.
+ *
+ * Field coordinates may be any int, negative included. Field states use the same constants as
+ * MinesweeperModel.
+ */
+public class ChunkedBoard {
+
+    /**
+     * Smallest fraction of fields that may be mines. Below this, runs of empty fields stop
+     * being finite often enough that one touch could try to reveal an unbounded area.
+     */
+    public static final float MIN_MINE_DENSITY = 0.12f;
+
+    /**
+     * Largest number of fields a single touch reveals. Empty fields past this limit are
+     * revealed without expanding their neighbors, which the player can then touch directly.
+     */
+    public static final int MAX_CASCADE = 1 << 16;
+
+    /**
+     * Seed deciding where every mine is
+     */
+    private final long seed;
+
+    private final ChunkCache chunks;
+
+    /**
+     * If the player is in Flag Mode, this boolean will be set to true
+     */
+    private boolean flagMode = false;
+
+    /**
+     * If this boolean is set to true, the player has lost the game
+     */
+    private boolean isLost = false;
+
+    /**
+     * Number of fields revealed so far
+     */
+    private long revealedCount = 0;
+
+    /**
+     * Work buffer of packed field coordinates for the reveal flood-fill, reused between touches
+     */
+    private long[] revealStack = new long[256];
+
+    /**
+     * Starts an endless board. The store should be cleared first if it holds chunks of a
+     * different board.
+     *
+     * @param seed seed deciding where every mine is
+     * @param mineDensity fraction of fields that are mines, at least MIN_MINE_DENSITY
+     * @param cacheCapacity largest number of chunks kept in memory
+     * @param store where chunks are saved when evicted from memory
+     */
+    public ChunkedBoard(long seed, float mineDensity, int cacheCapacity, ChunkStore store) {
+        if (mineDensity < MIN_MINE_DENSITY || mineDensity >= 1) {
+            throw new IllegalArgumentException("Invalid mine density: " + mineDensity);
+        }
+        this.seed = seed;
+        int minesPerChunk = Math.round(mineDensity * Chunk.CHUNK_CELLS);
+        chunks = new ChunkCache(seed, minesPerChunk, cacheCapacity, store);
+    }
+
+    //************************** Model Getters and Setters *************************
+
+    /**
+     * Gets the content in the desired field, generating its chunk if needed
+     *
+     * @param x X value of the field
+     * @param y Y value of the field
+     * @return content of desired field
+     */
+    public short getFieldContent(int x, int y) {
+        return chunks.getChunk(x >> Chunk.CHUNK_SHIFT, y >> Chunk.CHUNK_SHIFT).getFieldContent(cellInChunk(x, y));
+    }
+
+    /**
+     * Sets the content of the given field
+     *
+     * @param x X value of the field
+     * @param y Y value of the field
+     * @param content updated game state of the field
+     */
+    public void setFieldContent(int x, int y, short content) {
+        chunks.getChunk(x >> Chunk.CHUNK_SHIFT, y >> Chunk.CHUNK_SHIFT).setFieldContent(cellInChunk(x, y), content);
+    }
+
+    /**
+     * Determines if the given field contains a mine
+     *
+     * @param x x coordinate of the field
+     * @param y y coordinate of the field
+     * @return true if the given field is a mine, false othewise
+     */
+    public boolean isMine(int x, int y) {
+        return chunks.getChunk(x >> Chunk.CHUNK_SHIFT, y >> Chunk.CHUNK_SHIFT).isMine(cellInChunk(x, y));
+    }
+
+    /**
+     * Returns the number of mines in the fields adjacent to the given field
+     *
+     * @param x X coordinate of the field
+     * @param y Y coordinate of the field
+     * @return The number of mines nearby
+     */
+    public int numberOfMinesNearby(int x, int y) {
+        int numberOfNearbyMines = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if ((dx != 0 || dy != 0) && isMine(x + dx, y + dy)) {
+                    numberOfNearbyMines++;
+                }
+            }
+        }
+        return numberOfNearbyMines;
+    }
+
+    public boolean isFlagModeOn() {
+        return flagMode;
+    }
+
+    public void toggleFlagMode() {
+        flagMode = !flagMode;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Restores the counters of a board loaded back from its ChunkStore, whose saved chunks
+     * already hold the revealed fields
+     *
+     * @param revealedCount number of fields revealed so far
+     * @param lost true if the board was lost
+     */
+    void restoreCounters(long revealedCount, boolean lost) {
+        this.revealedCount = revealedCount;
+        this.isLost = lost;
+    }
+
+    public boolean isLost() {
+        return isLost;
+    }
+
+    /**
+     * @return the number of fields revealed so far
+     */
+    public long getRevealedCount() {
+        return revealedCount;
+    }
+
+    /**
+     * @return number of chunks currently held in memory
+     */
+    public int getLoadedChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * Saves every changed chunk still in memory, for when the game is paused
+     */
+    public void flush() {
+        chunks.flush();
+    }
+
+    /**
+     * Finds an empty field near the origin, for the player to start on
+     *
+     * @return packed coordinates of the field, x in the high and y in the low 32 bits
+     */
+    public long findOpening() {
+        for (int radius = 0; ; radius++) {
+            for (int y = -radius; y <= radius; y++) {
+                for (int x = -radius; x <= radius; x++) {
+                    if ((Math.abs(x) == radius || Math.abs(y) == radius)
+                            && !isMine(x, y) && numberOfMinesNearby(x, y) == 0) {
+                        return pack(x, y);
+                    }
+                }
+            }
+        }
+    }
+
+    //********************** Game State Getters and Setters ********************
+
+    /**
+     * Updates the board when the user touches at the given coordinates, following the same
+     * rules as MinesweeperModel.onTouchHandler
+     *
+     * @param x column of the field touched
+     * @param y row of the field touched
+     */
+    public void onTouchHandler(int x, int y) {
+        if (isLost) {
+            return;
+        }
+        short field = getFieldContent(x, y);
+        if (flagMode) {
+            if (field == MinesweeperModel.FLAG) {
+                setFieldContent(x, y, MinesweeperModel.UNREVEALED);
+            } else if (field == MinesweeperModel.UNREVEALED) {
+                if (isMine(x, y)) {
+                    setFieldContent(x, y, MinesweeperModel.FLAG);
+                } else {
+                    isLost = true;
+                }
+            }
+        } else if (field == MinesweeperModel.UNREVEALED) {
+            if (isMine(x, y)) {
+                isLost = true;
+            } else if (numberOfMinesNearby(x, y) > 0) {
+                setFieldContent(x, y, MinesweeperModel.NUMBER);
+                revealedCount++;
+            } else {
+                setFieldContent(x, y, MinesweeperModel.EMPTY);
+                revealedCount++;
+                revealAllAdjacentFields(x, y);
+            }
+        }
+    }
+
+    /**
+     * Reveals the opening around the given empty field with an explicit-stack flood-fill,
+     * loading chunks as the cascade reaches them. Stops expanding after MAX_CASCADE fields.
+     *
+     * @param x x coordinate of the given field
+     * @param y y coordinate of the given field
+     */
+    private void revealAllAdjacentFields(int x, int y) {
+        int top = 0;
+        int revealed = 1;
+        revealStack[top++] = pack(x, y);
+
+        while (top > 0 && revealed < MAX_CASCADE) {
+            long packed = revealStack[--top];
+            int cellX = (int) (packed >> 32);
+            int cellY = (int) packed;
+
+            for (int row = cellY - 1; row <= cellY + 1; row++) {
+                for (int col = cellX - 1; col <= cellX + 1; col++) {
+                    if (getFieldContent(col, row) != MinesweeperModel.UNREVEALED) {
+                        continue;
+                    }
+                    // Count before setting, since counting may evict the chunk being set
+                    int nearby = numberOfMinesNearby(col, row);
+                    revealed++;
+                    revealedCount++;
+                    if (nearby > 0) {
+                        setFieldContent(col, row, MinesweeperModel.NUMBER);
+                    } else {
+                        setFieldContent(col, row, MinesweeperModel.EMPTY);
+                        if (top == revealStack.length) {
+                            revealStack = Arrays.copyOf(revealStack, revealStack.length * 2);
+                        }
+                        revealStack[top++] = pack(col, row);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return row-major index of the given field inside its chunk
+     */
+    private static int cellInChunk(int x, int y) {
+        return ((y & (Chunk.CHUNK_SIZE - 1)) << Chunk.CHUNK_SHIFT) | (x & (Chunk.CHUNK_SIZE - 1));
+    }
+
+    private static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,110 @@
+package hu.ait.android.minesweeper.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Holds the endless board played in EndlessActivity, the way GameHolder holds the game of the
+ * fixed-size boards. Only used from the UI thread.
+ */
+public class EndlessHolder {
+
+    /**
+     * Fraction of fields that are mines, a little above ChunkedBoard.MIN_MINE_DENSITY
+     */
+    public static final float MINE_DENSITY = 0.16f;
+
+    /**
+     * Chunks kept in memory, enough for the screen and the largest cascade a touch reveals
+     */
+    public static final int CACHE_CAPACITY = 96;
+
+    /**
+     * Marks a view position that was never set
+     */
+    public static final long NO_POSITION = Long.MIN_VALUE;
+
+    /**
+     * The board currently shown, or null before the first start
+     */
+    private static ChunkedBoard board = null;
+
+    /**
+     * Where the board's chunks and counters are saved
+     */
+    private static ChunkStore store = null;
+
+    /**
+     * Packed coordinates of the field at the center of the view, x in the high and y in the
+     * low 32 bits, so the view comes back to the same place after being recreated
+     */
+    private static long viewCenter = NO_POSITION;
+
+    private EndlessHolder() {
+    }
+
+    /**
+     * Loads the board saved in the directory if none has been started in this process, or
+     * starts a new one if none was saved
+     *
+     * @param directory where the board's evicted chunks are saved
+     * @return the board
+     */
+    public static ChunkedBoard start(File directory) {
+        if (board == null) {
+            store = new ChunkStore(directory);
+            try {
+                board = store.loadBoard(MINE_DENSITY, CACHE_CAPACITY);
+            } catch (IOException e) {
+                // The chunks cannot be trusted without their board, so start over
+                board = null;
+            }
+            if (board == null) {
+                restart(directory);
+            }
+        }
+
+        return board;
+    }
+
+    /**
+     * Starts a new board from a new seed, dropping the chunks saved for the previous one
+     *
+     * @param directory where the board's evicted chunks are saved
+     * @return the new board
+     */
+    public static ChunkedBoard restart(File directory) {
+        store = new ChunkStore(directory);
+        store.clear();
+        board = new ChunkedBoard(new Random().nextLong(), MINE_DENSITY, CACHE_CAPACITY, store);
+        viewCenter = NO_POSITION;
+
+        return board;
+    }
+
+    /**
+     * Saves the board's changed chunks and its counters, for when the game is paused
+     *
+     * @throws IOException if the board cannot be saved
+     */
+    public static void save() throws IOException {
+        board.flush();
+        store.saveBoard(board);
+    }
+
+    /**
+     * @return the board, or null if none was started
+     */
+    public static ChunkedBoard getBoard() {
+        return board;
+    }
+
+    public static long getViewCenter() {
+        return viewCenter;
+    }
+
+    public static void setViewCenter(long viewCenter) {
+        EndlessHolder.viewCenter = viewCenter;
+    }
+}
@@ -0,0 +1,249 @@
+package hu.ait.android.minesweeper.model;
+
+import java.util.Arrays;
+
+/**
+ * Independent part of the frontier of a game: a set of unrevealed fields (the variables) next
+ * to revealed number fields (the constraints), where no variable shares a constraint with a
+ * variable outside the component. The mines of one component can be counted without looking
+ * at any other.
+ */
+public class FrontierComponent {
+
+    /**
+     * Row-major indices of the unrevealed fields, in the order they are assigned
+     */
+    private final int[] variables;
+
+    /**
+     * Row-major indices of the number fields constraining the variables
+     */
+    private final int[] constraints;
+
+    /**
+     * Number of mines still missing around each constraint
+     */
+    private final int[] targets;
+
+    /**
+     * Indices into variables of the fields adjacent to each constraint
+     */
+    private final int[][] constraintVariables;
+
+    /**
+     * Indices into constraints of the constraints adjacent to each variable
+     */
+    private final int[][] variableConstraints;
+
+    private final int hash;
+
+    // Search state, only used while enumerating
+    private int[] assignedMines;
+    private int[] unassignedLeft;
+    private byte[] assignment;
+    private long[] solutionsByMines;
+    private long[][] mineCountsByMines;
+    private int maxMines;
+
+    /**
+     * @param variables row-major indices of the unrevealed fields
+     * @param constraints row-major indices of the number fields
+     * @param targets number of mines still missing around each number field
+     * @param boardWidth number of fields wide the game board is
+     */
+    public FrontierComponent(int[] variables, int[] constraints, int[] targets, int boardWidth) {
+        this.variables = variables;
+        this.constraints = constraints;
+        this.targets = targets;
+
+        int[] variableDegree = new int[variables.length];
+        constraintVariables = new int[constraints.length][];
+        int[] adjacent = new int[8];
+        for (int c = 0; c < constraints.length; c++) {
+            int count = 0;
+            for (int v = 0; v < variables.length; v++) {
+                if (areAdjacent(constraints[c], variables[v], boardWidth)) {
+                    adjacent[count++] = v;
+                    variableDegree[v]++;
+                }
+            }
+            constraintVariables[c] = Arrays.copyOf(adjacent, count);
+        }
+
+        variableConstraints = new int[variables.length][];
+        for (int v = 0; v < variables.length; v++) {
+            variableConstraints[v] = new int[variableDegree[v]];
+            variableDegree[v] = 0;
+        }
+        for (int c = 0; c < constraints.length; c++) {
+            for (int v : constraintVariables[c]) {
+                variableConstraints[v][variableDegree[v]++] = c;
+            }
+        }
+
+        hash = 31 * (31 * Arrays.hashCode(variables) + Arrays.hashCode(constraints)) + Arrays.hashCode(targets);
+    }
+
+    private static boolean areAdjacent(int a, int b, int boardWidth) {
+        return Math.abs(a % boardWidth - b % boardWidth) <= 1 && Math.abs(a / boardWidth - b / boardWidth) <= 1;
+    }
+
+    public int[] getVariables() {
+        return variables;
+    }
+
+    public int[] getConstraints() {
+        return constraints;
+    }
+
+    public int[] getTargets() {
+        return targets;
+    }
+
+    /**
+     * Two components are equal if they have the same variables, constraints and targets, so
+     * equal components always have the same solutions. Used as the key of cached results.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FrontierComponent)) {
+            return false;
+        }
+        FrontierComponent other = (FrontierComponent) o;
+        return hash == other.hash && Arrays.equals(variables, other.variables)
+                && Arrays.equals(constraints, other.constraints) && Arrays.equals(targets, other.targets);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Counts every way of placing mines on the variables that satisfies all constraints,
+     * grouped by the number of mines used. Runs a depth-first search that backtracks as soon
+     * as a constraint can no longer be met, so the cost grows with the number of solutions
+     * rather than with 2^variables on typical boards.
+     *
+     * @param maxMines largest number of mines the component may hold
+     * @return the solution counts, or a result with no solutions if the constraints conflict
+     */
+    public Result enumerate(int maxMines) {
+        this.maxMines = Math.min(maxMines, variables.length);
+        if (this.maxMines < 0) {
+            return new Result(new long[1], new long[1][variables.length]);
+        }
+        assignedMines = new int[constraints.length];
+        unassignedLeft = new int[constraints.length];
+        for (int c = 0; c < constraints.length; c++) {
+            unassignedLeft[c] = constraintVariables[c].length;
+        }
+        assignment = new byte[variables.length];
+        solutionsByMines = new long[this.maxMines + 1];
+        mineCountsByMines = new long[this.maxMines + 1][variables.length];
+
+        search(0, 0);
+
+        Result result = new Result(solutionsByMines, mineCountsByMines);
+        assignedMines = null;
+        unassignedLeft = null;
+        assignment = null;
+        solutionsByMines = null;
+        mineCountsByMines = null;
+        return result;
+    }
+
+    private void search(int variable, int mines) {
+        if (variable == variables.length) {
+            solutionsByMines[mines]++;
+            long[] mineCounts = mineCountsByMines[mines];
+            for (int v = 0; v < variables.length; v++) {
+                mineCounts[v] += assignment[v];
+            }
+            return;
+        }
+
+        for (int value = 0; value <= 1; value++) {
+            if (mines + value > maxMines) {
+                break;
+            }
+            if (assign(variable, value)) {
+                assignment[variable] = (byte) value;
+                search(variable + 1, mines + value);
+            }
+            unassign(variable, value);
+        }
+        assignment[variable] = 0;
+    }
+
+    /**
+     * Applies the value to every constraint of the variable
+     *
+     * @return false if a constraint can no longer be met
+     */
+    private boolean assign(int variable, int value) {
+        boolean feasible = true;
+        for (int c : variableConstraints[variable]) {
+            assignedMines[c] += value;
+            unassignedLeft[c]--;
+            if (assignedMines[c] > targets[c] || assignedMines[c] + unassignedLeft[c] < targets[c]) {
+                feasible = false;
+            }
+        }
+        return feasible;
+    }
+
+    private void unassign(int variable, int value) {
+        for (int c : variableConstraints[variable]) {
+            assignedMines[c] -= value;
+            unassignedLeft[c]++;
+        }
+    }
+
+    /**
+     * Solution counts of a component, grouped by the number of mines used
+     */
+    public static class Result {
+
+        /**
+         * Number of solutions using each number of mines
+         */
+        public final long[] solutionsByMines;
+
+        /**
+         * For each number of mines, how many of those solutions put a mine on each variable
+         */
+        public final long[][] mineCountsByMines;
+
+        public Result(long[] solutionsByMines, long[][] mineCountsByMines) {
+            this.solutionsByMines = solutionsByMines;
+            this.mineCountsByMines = mineCountsByMines;
+        }
+
+        /**
+         * @return total number of solutions, whatever the number of mines
+         */
+        public long totalSolutions() {
+            long total = 0;
+            for (long solutions : solutionsByMines) {
+                total += solutions;
+            }
+            return total;
+        }
+
+        /**
+         * @param variable index of the variable
+         * @return number of solutions, whatever the number of mines, with a mine on the variable
+         */
+        public long totalMineCount(int variable) {
+            long total = 0;
+            for (long[] mineCounts : mineCountsByMines) {
+                total += mineCounts[variable];
+            }
+            return total;
+        }
+    }
+}
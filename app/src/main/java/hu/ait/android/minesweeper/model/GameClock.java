@@ -0,0 +1,83 @@
+package hu.ait.android.minesweeper.model;
+
+/**
+ * Stopwatch of a game on the monotonic System.nanoTime clock. Only the start and pause stamps
+ * are kept, so nothing has to tick while the game runs and the elapsed time is exact to the
+ * millisecond however long the game was paused or backgrounded.
+ */
+public class GameClock {
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long MILLIS_PER_SECOND = 1000L;
+
+    /**
+     * Time elapsed before the current run, in nanoseconds
+     */
+    private long pausedNanos = 0;
+
+    /**
+     * System.nanoTime when the clock was last started
+     */
+    private long startNanos;
+
+    private boolean running = false;
+
+    /**
+     * Starts the clock, or keeps it running if it already is
+     */
+    public void start() {
+        if (!running) {
+            startNanos = System.nanoTime();
+            running = true;
+        }
+    }
+
+    /**
+     * Stops the clock, keeping the time elapsed so far
+     */
+    public void pause() {
+        if (running) {
+            pausedNanos += System.nanoTime() - startNanos;
+            running = false;
+        }
+    }
+
+    /**
+     * Stops the clock and sets the elapsed time
+     *
+     * @param elapsedMillis time elapsed in milliseconds
+     */
+    public void reset(long elapsedMillis) {
+        running = false;
+        pausedNanos = elapsedMillis * NANOS_PER_MILLI;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return time elapsed in milliseconds
+     */
+    public long getElapsedMillis() {
+        long elapsedNanos = pausedNanos;
+        if (running) {
+            elapsedNanos += System.nanoTime() - startNanos;
+        }
+        return elapsedNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return whole seconds elapsed
+     */
+    public int getElapsedSeconds() {
+        return (int) (getElapsedMillis() / MILLIS_PER_SECOND);
+    }
+
+    /**
+     * @return milliseconds until the whole seconds elapsed next change, while the clock runs
+     */
+    public long getMillisUntilNextSecond() {
+        return MILLIS_PER_SECOND - getElapsedMillis() % MILLIS_PER_SECOND;
+    }
+}
@@ -0,0 +1,87 @@
+package hu.ait.android.minesweeper.model;
+
+/**
+ * Holds the game played in the activities. The activities and the view all run on the UI
+ * thread, which is the only thread the held game may be used from.
+ */
+public class GameHolder {
+
+    /**
+     * The game currently shown, created on first use
+     */
+    private static MinesweeperModel game = null;
+
+    /**
+     * Solver reading the held game, kept so it catches up incrementally between hints
+     */
+    private static MinesweeperSolver solver = null;
+
+    /**
+     * Mine probabilities of the held game, updated incrementally from its solver
+     */
+    private static MineProbabilityMap probabilityMap = null;
+
+    /**
+     * No-guess layouts searched ahead for the held game
+     */
+    private static NoGuessLayouts noGuessLayouts = null;
+
+    private GameHolder() {
+    }
+
+    /**
+     * @return true if the game has been created, false if the process is fresh
+     */
+    public static boolean hasGame() {
+        return game != null;
+    }
+
+    /**
+     * @return the game played in the activities
+     */
+    public static MinesweeperModel getGame() {
+        if (game == null) {
+            game = new MinesweeperModel();
+            game.setBoardPool(new BoardPool(BoardPool.defaultMemoryBudget()));
+            game.setMoveJournal(new MoveJournal());
+            noGuessLayouts = new NoGuessLayouts();
+            game.setNoGuessLayouts(noGuessLayouts);
+            // The only game on the UI thread, and the only one the player's timings come from
+            game.setInstrumented(true);
+        }
+
+        return game;
+    }
+
+    /**
+     * @return the solver of the game played in the activities, created on first use
+     */
+    public static MinesweeperSolver getSolver() {
+        if (solver == null) {
+            solver = new MinesweeperSolver(getGame());
+        }
+
+        return solver;
+    }
+
+    /**
+     * @return the mine probability map of the game played in the activities, created on first use
+     */
+    public static MineProbabilityMap getProbabilityMap() {
+        if (probabilityMap == null) {
+            probabilityMap = new MineProbabilityMap(getSolver());
+        }
+
+        return probabilityMap;
+    }
+
+    /**
+     * Stops the background work of the held game, for when the app is closed. The game is
+     * kept, and starts it again when its board settings are next configured.
+     */
+    public static void shutdown() {
+        if (noGuessLayouts != null) {
+            noGuessLayouts.shutdown();
+        }
+    }
+}
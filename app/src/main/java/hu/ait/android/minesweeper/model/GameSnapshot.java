@@ -0,0 +1,213 @@
+package hu.ait.android.minesweeper.model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Compact binary save format of a game, streamed through a buffered NIO channel.
+ *
+ * The snapshot is a fixed header followed by one 2-bit code per field, four fields to a
+ * byte in row-major order:
+ *
+ * 0 = unrevealed, no mine
+ * 1 = revealed
+ * 2 = flagged (flags only ever sit on mines)
+ * 3 = unrevealed mine
+ *
+ * The mine bitset and the visible state share the two bits because a revealed field is never a
+ * mine and a flagged one always is, and whether a revealed field is empty or a number follows
+ * from the mines. A 1000x1000 game takes 250 KB.
+ */
+public class GameSnapshot {
+
+    /**
+     * "MSWP"
+     */
+    private static final int MAGIC = 0x4D535750;
+    private static final short VERSION = 2;
+
+    /**
+     * Version 1 stored the time in whole seconds as an int, version 2 in milliseconds as a long
+     */
+    private static final short VERSION_SECONDS = 1;
+
+    private static final int HEADER_BYTES = 4 + 2 + 1 + 4 * 3 + 8 + 8 + 4;
+    private static final int HEADER_BYTES_SECONDS = HEADER_BYTES - 4;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    // Header flags
+    private static final int FLAG_LOST = 1;
+    private static final int FLAG_FLAG_MODE = 1 << 1;
+    private static final int FLAG_MINES_GENERATED = 1 << 2;
+    private static final int FLAG_NO_GUESS = 1 << 3;
+
+    // Field codes
+    private static final int CODE_UNREVEALED = 0;
+    private static final int CODE_REVEALED = 1;
+    private static final int CODE_FLAG = 2;
+    private static final int CODE_MINE = 3;
+
+    private GameSnapshot() {
+    }
+
+    /**
+     * Writes the game to the channel. Does not close the channel.
+     *
+     * @param game the game to save
+     * @param channel where to write the snapshot
+     * @throws IOException if writing fails
+     */
+    public static void write(MinesweeperModel game, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        int flags = 0;
+        if (game.isLost()) {
+            flags |= FLAG_LOST;
+        }
+        if (game.isFlagModeOn()) {
+            flags |= FLAG_FLAG_MODE;
+        }
+        if (game.areMinesGenerated()) {
+            flags |= FLAG_MINES_GENERATED;
+        }
+        if (game.isNoGuess()) {
+            flags |= FLAG_NO_GUESS;
+        }
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.put((byte) flags);
+        buffer.putInt(game.getGameBoardWidth());
+        buffer.putInt(game.getGameBoardHeight());
+        buffer.putInt(game.getNumberOfMines());
+        buffer.putLong(game.getLayoutSeed());
+        buffer.putLong(game.getElapsedMillis());
+        buffer.putInt(game.getMoveCount());
+
+        int numberOfCells = game.getGameBoardWidth() * game.getGameBoardHeight();
+        for (int cell = 0; cell < numberOfCells; cell += 4) {
+            int packed = 0;
+            for (int i = 0; i < 4 && cell + i < numberOfCells; i++) {
+                packed |= code(game, cell + i) << (i * 2);
+            }
+            if (!buffer.hasRemaining()) {
+                flush(buffer, channel);
+            }
+            buffer.put((byte) packed);
+        }
+        flush(buffer, channel);
+    }
+
+    private static int code(MinesweeperModel game, int cell) {
+        short content = game.getFieldContent(cell);
+        if (content == MinesweeperModel.FLAG) {
+            return CODE_FLAG;
+        }
+        if (content == MinesweeperModel.EMPTY || content == MinesweeperModel.NUMBER) {
+            return CODE_REVEALED;
+        }
+        return game.isMine(cell) ? CODE_MINE : CODE_UNREVEALED;
+    }
+
+    private static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Replaces the game with the one read from the channel. Does not close the channel.
+     *
+     * @param game the game to restore into
+     * @param channel where to read the snapshot from
+     * @throws IOException if reading fails or the snapshot is invalid. The game is then left
+     * as it was if the header was invalid, or restarted otherwise.
+     */
+    public static void read(MinesweeperModel game, ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        buffer.limit(HEADER_BYTES_SECONDS);
+        fill(buffer, channel);
+        short version = buffer.getInt() == MAGIC ? buffer.getShort() : 0;
+        if (version != VERSION && version != VERSION_SECONDS) {
+            throw new IOException("Not a game snapshot");
+        }
+        int flags = buffer.get();
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int mines = buffer.getInt();
+        long seed = buffer.getLong();
+        long timeMillis;
+        if (version == VERSION_SECONDS) {
+            timeMillis = buffer.getInt() * 1000L;
+        } else {
+            // The header is four bytes longer than the one read so far
+            buffer.compact();
+            buffer.limit(buffer.position() + 4);
+            fill(buffer, channel);
+            timeMillis = buffer.getLong();
+        }
+        int moves = buffer.getInt();
+        boolean generated = (flags & FLAG_MINES_GENERATED) != 0;
+        try {
+            game.beginRestore(width, height, mines, seed, timeMillis, moves, (flags & FLAG_LOST) != 0,
+                    (flags & FLAG_FLAG_MODE) != 0, (flags & FLAG_NO_GUESS) != 0, generated);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid game snapshot", e);
+        }
+
+        try {
+            readFields(game, channel, buffer, width * height, generated);
+        } catch (IOException e) {
+            // Do not leave a half restored game behind
+            game.restartGame();
+            throw e;
+        }
+    }
+
+    /**
+     * Decodes the field codes straight into the game's board
+     */
+    private static void readFields(MinesweeperModel game, ReadableByteChannel channel, ByteBuffer buffer,
+                                   int numberOfCells, boolean generated) throws IOException {
+        int cell = 0;
+        while (cell < numberOfCells) {
+            buffer.clear();
+            buffer.limit(Math.min(buffer.capacity(), (numberOfCells - cell + 3) / 4));
+            fill(buffer, channel);
+            while (buffer.hasRemaining()) {
+                int packed = buffer.get();
+                for (int i = 0; i < 4 && cell < numberOfCells; i++, cell++) {
+                    int code = (packed >>> (i * 2)) & 0x03;
+                    if (code == CODE_REVEALED) {
+                        game.restoreFieldState(cell, MinesweeperModel.NUMBER);
+                    } else if (code == CODE_FLAG || code == CODE_MINE) {
+                        if (!generated || !game.restoreMine(cell)) {
+                            throw new IOException("Invalid game snapshot: too many mines");
+                        }
+                        if (code == CODE_FLAG) {
+                            game.restoreFieldState(cell, MinesweeperModel.FLAG);
+                        }
+                    }
+                }
+            }
+        }
+        if (!game.finishRestore()) {
+            throw new IOException("Invalid game snapshot: too few mines");
+        }
+    }
+
+    /**
+     * Reads from the channel until the buffer is full
+     */
+    private static void fill(ByteBuffer buffer, ReadableByteChannel channel) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Game snapshot is truncated");
+            }
+        }
+        buffer.flip();
+    }
+}
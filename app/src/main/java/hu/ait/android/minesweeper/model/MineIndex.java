@@ -0,0 +1,275 @@
+package hu.ait.android.minesweeper.model;
+
+import java.util.Arrays;
+
+/**
+ * Set of the cells on the game board that hold a mine. Cells are identified by their row-major
+ * index (y * gameBoardWidth + x).
+ *
+ * The index picks its own layout from the board size and number of mines: dense boards use a
+ * packed bitset with one bit per cell, sparse boards use an open-addressing hash set of cell
+ * indices. Either way, lookups take constant time and no values are boxed.
+ */
+public class MineIndex {
+
+    /**
+     * Marks an unused slot of the hash set. Cell indices are never negative.
+     */
+    private static final int EMPTY_SLOT = -1;
+
+    /**
+     * Number of cells on the game board
+     */
+    private final int numberOfCells;
+
+    /**
+     * One bit per cell, set if the cell is a mine. Null if the hash set layout is used.
+     */
+    private long[] bits;
+
+    /**
+     * Open-addressing table of mine cell indices. Null if the bitset layout is used.
+     * The length is always a power of two and at most half of the slots are in use.
+     */
+    private int[] slots;
+
+    /**
+     * Number of mines in the index
+     */
+    private int size = 0;
+
+    /**
+     * Creates an empty index for a board with the given number of cells, using whichever layout
+     * takes less memory for the expected number of mines.
+     *
+     * @param numberOfCells number of cells on the game board
+     * @param expectedMines number of mines that will be added
+     */
+    public MineIndex(int numberOfCells, int expectedMines) {
+        this.numberOfCells = numberOfCells;
+
+        if (usesHashSet(numberOfCells, expectedMines)) {
+            slots = new int[tableLengthFor(expectedMines)];
+            Arrays.fill(slots, EMPTY_SLOT);
+        } else {
+            bits = new long[(numberOfCells + 63) >>> 6];
+        }
+    }
+
+    /**
+     * Tells if this index, once cleared, is the same as a new one created with the given
+     * arguments, so it can be reused for the next game instead
+     *
+     * @param numberOfCells number of cells on the game board
+     * @param expectedMines number of mines that will be added
+     * @return true if the board size and the layout picked for it are the same
+     */
+    public boolean fits(int numberOfCells, int expectedMines) {
+        if (numberOfCells != this.numberOfCells) {
+            return false;
+        }
+        if (usesHashSet(numberOfCells, expectedMines)) {
+            return slots != null && slots.length == tableLengthFor(expectedMines);
+        }
+        return bits != null;
+    }
+
+    /**
+     * @return true if the hash set takes less memory than the bitset for the given board
+     */
+    private static boolean usesHashSet(int numberOfCells, int expectedMines) {
+        int bitsetBytes = ((numberOfCells + 63) >>> 6) * 8;
+        return (long) tableLengthFor(expectedMines) * 4 < bitsetBytes;
+    }
+
+    /**
+     * @param expectedMines number of mines that will be stored
+     * @return smallest power of two that keeps the table at most half full
+     */
+    private static int tableLengthFor(int expectedMines) {
+        int length = 2;
+        while (length < expectedMines * 2) {
+            length <<= 1;
+        }
+        return length;
+    }
+
+    /**
+     * Mixes the bits of a cell index so neighboring cells do not land in neighboring slots
+     */
+    private static int hash(int cell) {
+        int h = cell * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return true if the hash set layout is in use, false if the bitset layout is
+     */
+    public boolean isSparse() {
+        return slots != null;
+    }
+
+    /**
+     * @return number of mines in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Determines if the given cell holds a mine
+     *
+     * @param cell row-major index of the cell
+     * @return true if the cell is a mine, false otherwise
+     */
+    public boolean contains(int cell) {
+        if (cell < 0 || cell >= numberOfCells) {
+            return false;
+        }
+        if (bits != null) {
+            return (bits[cell >>> 6] & (1L << cell)) != 0;
+        }
+
+        int mask = slots.length - 1;
+        int i = hash(cell) & mask;
+        while (slots[i] != EMPTY_SLOT) {
+            if (slots[i] == cell) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Adds a mine at the given cell
+     *
+     * @param cell row-major index of the cell
+     * @return true if the cell was not already a mine, false otherwise
+     */
+    public boolean add(int cell) {
+        if (bits != null) {
+            long bit = 1L << cell;
+            if ((bits[cell >>> 6] & bit) != 0) {
+                return false;
+            }
+            bits[cell >>> 6] |= bit;
+            size++;
+            return true;
+        }
+
+        if ((size + 1) * 2 > slots.length) {
+            grow();
+        }
+        int mask = slots.length - 1;
+        int i = hash(cell) & mask;
+        while (slots[i] != EMPTY_SLOT) {
+            if (slots[i] == cell) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        slots[i] = cell;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes the mine at the given cell, if there is one
+     *
+     * @param cell row-major index of the cell
+     * @return true if the cell was a mine, false otherwise
+     */
+    public boolean remove(int cell) {
+        if (bits != null) {
+            long bit = 1L << cell;
+            if ((bits[cell >>> 6] & bit) == 0) {
+                return false;
+            }
+            bits[cell >>> 6] &= ~bit;
+            size--;
+            return true;
+        }
+
+        int mask = slots.length - 1;
+        int i = hash(cell) & mask;
+        while (slots[i] != cell) {
+            if (slots[i] == EMPTY_SLOT) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+
+        // Backward shift deletion so no tombstones are needed
+        int gap = i;
+        int j = (i + 1) & mask;
+        while (slots[j] != EMPTY_SLOT) {
+            int home = hash(slots[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                slots[gap] = slots[j];
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+        slots[gap] = EMPTY_SLOT;
+        size--;
+        return true;
+    }
+
+    /**
+     * @return row-major indices of every mine, in ascending order
+     */
+    public int[] toArray() {
+        int[] cells = new int[size];
+        int count = 0;
+        if (bits != null) {
+            for (int word = 0; word < bits.length; word++) {
+                long remaining = bits[word];
+                while (remaining != 0) {
+                    cells[count++] = (word << 6) + Long.numberOfTrailingZeros(remaining);
+                    remaining &= remaining - 1;
+                }
+            }
+            return cells;
+        }
+
+        for (int cell : slots) {
+            if (cell != EMPTY_SLOT) {
+                cells[count++] = cell;
+            }
+        }
+        Arrays.sort(cells);
+        return cells;
+    }
+
+    /**
+     * Removes every mine from the index
+     */
+    public void clear() {
+        if (bits != null) {
+            Arrays.fill(bits, 0L);
+        } else {
+            Arrays.fill(slots, EMPTY_SLOT);
+        }
+        size = 0;
+    }
+
+    /**
+     * Doubles the hash table when more mines are added than it was sized for
+     */
+    private void grow() {
+        int[] old = slots;
+        slots = new int[old.length * 2];
+        Arrays.fill(slots, EMPTY_SLOT);
+        int mask = slots.length - 1;
+        for (int cell : old) {
+            if (cell != EMPTY_SLOT) {
+                int i = hash(cell) & mask;
+                while (slots[i] != EMPTY_SLOT) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = cell;
+            }
+        }
+    }
+}
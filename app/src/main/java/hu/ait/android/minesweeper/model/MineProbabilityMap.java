@@ -0,0 +1,483 @@
+package hu.ait.android.minesweeper.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exact mine probability of every unrevealed field, for when the solver finds no safe move.
+ *
+ * The frontier is split into independent components, and each component's solutions are
+ * counted by number of mines. A layout of the whole board is a solution of every component
+ * plus any placement of the remaining mines on the unconstrained fields, so each combination
+ * of component solutions is weighted by the number of ways to place the mines left over.
+ *
+ * The map is incremental like the solver: after a move, only the components within two fields
+ * of a field the move changed or the solver deduced are collected again, since no other
+ * number field's constraints changed. After an undo, a new game or missed moves, every
+ * component is collected again. Component results are also cached by the component itself,
+ * which compares by its fields and targets, so a component that comes back unchanged is a
+ * cache hit instead of being enumerated again.
+ *
+ * Approximation: components larger than MinesweeperSolver.MAX_COMPONENT_VARIABLES are not
+ * enumerated, because their solutions can take exponentially long to count. Their fields are
+ * given the probability of the unconstrained fields, which ignores the numbers next to them,
+ * and isExact returns false until no such component is left.
+ */
+public class MineProbabilityMap {
+
+    /**
+     * Largest number of component results kept between updates
+     */
+    public static final int CACHE_CAPACITY = 1024;
+
+    /**
+     * Marks a field that is in no component
+     */
+    private static final int NO_COMPONENT = -1;
+
+    private final MinesweeperSolver solver;
+
+    /**
+     * Results by component, in access order so the eldest entry is the least recently used
+     */
+    private final LinkedHashMap<FrontierComponent, FrontierComponent.Result> cache;
+
+    // Game, move and solver state the map last caught up with
+    private int lastGameCount = -1;
+    private int lastMoveCount = -1;
+    private int lastUndoCount = -1;
+    private int lastRebuildCount = -1;
+    private int lastDeducedSafeCount = 0;
+    private int lastDeducedMineCount = 0;
+
+    /**
+     * Current components, each with its enumeration result
+     */
+    private final List<FrontierComponent> components = new ArrayList<FrontierComponent>();
+    private final List<FrontierComponent.Result> results = new ArrayList<FrontierComponent.Result>();
+
+    /**
+     * Variables of each component too large to enumerate
+     */
+    private final List<int[]> oversized = new ArrayList<int[]>();
+
+    /**
+     * Index into components, or into oversized offset by the number of components, of the
+     * component holding each field, or NO_COMPONENT
+     */
+    private int[] componentOf = new int[0];
+
+    /**
+     * Mine probability of each field in an enumerated component, by row-major cell index
+     */
+    private float[] probabilities = new float[0];
+
+    // Fields to collect components from, with a stamp so none is added twice
+    private int[] seeds = new int[0];
+    private int[] seedStamp = new int[0];
+    private int stamp = 0;
+
+    private float unconstrainedProbability;
+    private int enumeratedCount;
+
+    /**
+     * @param solver the solver of the game to map. Updating the map also updates the solver.
+     */
+    public MineProbabilityMap(MinesweeperSolver solver) {
+        this.solver = solver;
+        this.cache = new LinkedHashMap<FrontierComponent, FrontierComponent.Result>(
+                CACHE_CAPACITY * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<FrontierComponent, FrontierComponent.Result> eldest) {
+                return size() > CACHE_CAPACITY;
+            }
+        };
+    }
+
+    /**
+     * Catches up with the game and recomputes the probabilities
+     */
+    public void update() {
+        solver.update();
+        MinesweeperModel game = solver.getGame();
+        int numberOfCells = game.getGameBoardWidth() * game.getGameBoardHeight();
+        boolean sameGame = game.getGameCount() == lastGameCount && game.getUndoCount() == lastUndoCount
+                && solver.getRebuildCount() == lastRebuildCount && componentOf.length == numberOfCells;
+
+        int seedCount;
+        if (sameGame && (game.getMoveCount() == lastMoveCount || game.getMoveCount() == lastMoveCount + 1)) {
+            seedCount = collectSeeds(game, game.getMoveCount() == lastMoveCount + 1);
+            Arrays.sort(seeds, 0, seedCount);
+        } else {
+            // Missed moves or a new game, so every field may have changed
+            if (componentOf.length != numberOfCells) {
+                componentOf = new int[numberOfCells];
+                probabilities = new float[numberOfCells];
+                seeds = new int[numberOfCells];
+                seedStamp = new int[numberOfCells];
+            }
+            Arrays.fill(componentOf, NO_COMPONENT);
+            components.clear();
+            results.clear();
+            oversized.clear();
+            for (int cell = 0; cell < numberOfCells; cell++) {
+                seeds[cell] = cell;
+            }
+            seedCount = numberOfCells;
+        }
+        lastGameCount = game.getGameCount();
+        lastMoveCount = game.getMoveCount();
+        lastUndoCount = game.getUndoCount();
+        lastRebuildCount = solver.getRebuildCount();
+        lastDeducedSafeCount = solver.getDeducedSafeCount();
+        lastDeducedMineCount = solver.getDeducedMineCount();
+
+        List<FrontierComponent> collected = solver.collectComponents(seeds, seedCount, oversized);
+        List<FrontierComponent.Result> collectedResults;
+        try {
+            collectedResults = lookUp(collected);
+        } catch (InterruptedException e) {
+            // Keep the previous probabilities, and collect every component next time
+            Thread.currentThread().interrupt();
+            lastGameCount = -1;
+            return;
+        }
+        components.addAll(collected);
+        results.addAll(collectedResults);
+        indexComponents();
+
+        // Unknown fields are unrevealed fields the solver has not deduced, and every one not
+        // in an enumerated component is unconstrained
+        int unconstrainedCount = game.gameBoardCounter(MinesweeperModel.UNREVEALED)
+                - solver.getSafeCells().length - solver.getMineCells().length;
+        for (FrontierComponent component : components) {
+            unconstrainedCount -= component.getVariables().length;
+        }
+        combine(components, results, solver.getUnknownMineCount(), unconstrainedCount);
+    }
+
+    /**
+     * Drops the components near the fields changed since the last update and gathers the fields
+     * their replacements may start from: the dropped components' fields and every field within
+     * two of a changed one, whose number field neighbors may have changed
+     *
+     * @param moved true if the game made one move since the last update
+     * @return number of fields in seeds
+     */
+    private int collectSeeds(MinesweeperModel game, boolean moved) {
+        stamp++;
+        int seedCount = 0;
+        if (moved) {
+            int[] changedCells = game.getChangedCells();
+            for (int i = 0; i < game.getChangedCellCount(); i++) {
+                seedCount = seedAround(changedCells[i], game, seedCount);
+            }
+        }
+        for (int i = lastDeducedSafeCount; i < solver.getDeducedSafeCount(); i++) {
+            seedCount = seedAround(solver.getDeducedSafe(i), game, seedCount);
+        }
+        for (int i = lastDeducedMineCount; i < solver.getDeducedMineCount(); i++) {
+            seedCount = seedAround(solver.getDeducedMine(i), game, seedCount);
+        }
+
+        // Remove the dropped components, which were marked by clearing their first field's entry
+        int kept = 0;
+        for (int i = 0; i < components.size(); i++) {
+            int[] variables = components.get(i).getVariables();
+            if (componentOf[variables[0]] != NO_COMPONENT) {
+                components.set(kept, components.get(i));
+                results.set(kept, results.get(i));
+                kept++;
+            }
+        }
+        components.subList(kept, components.size()).clear();
+        results.subList(kept, results.size()).clear();
+        kept = 0;
+        for (int i = 0; i < oversized.size(); i++) {
+            if (componentOf[oversized.get(i)[0]] != NO_COMPONENT) {
+                oversized.set(kept++, oversized.get(i));
+            }
+        }
+        oversized.subList(kept, oversized.size()).clear();
+        return seedCount;
+    }
+
+    /**
+     * Adds the fields within two of the given field to seeds, dropping the components holding
+     * any of them and adding their fields too
+     */
+    private int seedAround(int cell, MinesweeperModel game, int seedCount) {
+        int width = game.getGameBoardWidth();
+        int height = game.getGameBoardHeight();
+        int x = cell % width;
+        int y = cell / width;
+        for (int row = Math.max(0, y - 2); row <= Math.min(height - 1, y + 2); row++) {
+            for (int col = Math.max(0, x - 2); col <= Math.min(width - 1, x + 2); col++) {
+                int neighbor = row * width + col;
+                int component = componentOf[neighbor];
+                if (component != NO_COMPONENT) {
+                    int[] variables = component < components.size() ? components.get(component).getVariables()
+                            : oversized.get(component - components.size());
+                    for (int variable : variables) {
+                        componentOf[variable] = NO_COMPONENT;
+                        seedCount = seed(variable, seedCount);
+                    }
+                }
+                seedCount = seed(neighbor, seedCount);
+            }
+        }
+        return seedCount;
+    }
+
+    private int seed(int cell, int seedCount) {
+        if (seedStamp[cell] != stamp) {
+            seedStamp[cell] = stamp;
+            seeds[seedCount++] = cell;
+        }
+        return seedCount;
+    }
+
+    /**
+     * Points componentOf at the current components
+     */
+    private void indexComponents() {
+        for (int i = 0; i < components.size(); i++) {
+            for (int variable : components.get(i).getVariables()) {
+                componentOf[variable] = i;
+            }
+        }
+        for (int i = 0; i < oversized.size(); i++) {
+            for (int variable : oversized.get(i)) {
+                componentOf[variable] = components.size() + i;
+            }
+        }
+    }
+
+    /**
+     * Finds the result of each component in the cache, enumerating the missing ones in parallel
+     */
+    private List<FrontierComponent.Result> lookUp(List<FrontierComponent> components) throws InterruptedException {
+        List<FrontierComponent> missing = new ArrayList<FrontierComponent>();
+        for (FrontierComponent component : components) {
+            if (!cache.containsKey(component)) {
+                missing.add(component);
+            }
+        }
+        enumeratedCount = missing.size();
+        if (!missing.isEmpty()) {
+            // Count solutions with any number of mines, so the result does not depend on the mines left
+            List<FrontierComponent.Result> enumerated = MinesweeperSolver.enumerateAll(missing, Integer.MAX_VALUE, true);
+            for (int i = 0; i < missing.size(); i++) {
+                cache.put(missing.get(i), enumerated.get(i));
+            }
+        }
+
+        List<FrontierComponent.Result> results = new ArrayList<FrontierComponent.Result>(components.size());
+        for (FrontierComponent component : components) {
+            results.add(cache.get(component));
+        }
+        return results;
+    }
+
+    /**
+     * Weighs the solutions of all components against each other and the unconstrained fields
+     * and writes the resulting probabilities.
+     *
+     * Works with two sweeps over the components. before[i][t] counts the ways components
+     * before i hold t mines, and after[i][t] counts the ways components from i on, together
+     * with the unconstrained fields, hold the rest of the mines when the earlier ones hold t.
+     * Both are scaled to stay within double range, with the log of the scale kept apart.
+     */
+    private void combine(List<FrontierComponent> components, List<FrontierComponent.Result> results,
+                         int remainingMines, int unconstrainedCount) {
+        int componentCount = components.size();
+        int[] mineOffsets = new int[componentCount + 1];
+        for (int i = 0; i < componentCount; i++) {
+            mineOffsets[i + 1] = mineOffsets[i] + results.get(i).solutionsByMines.length - 1;
+        }
+        int maxFrontierMines = mineOffsets[componentCount];
+
+        // Ways to place the mines the frontier leaves over on the unconstrained fields
+        double[] placements = new double[maxFrontierMines + 1];
+        double placementScale = logBinomials(unconstrainedCount, remainingMines, placements);
+
+        double[][] before = new double[componentCount + 1][];
+        double[] beforeScale = new double[componentCount + 1];
+        before[0] = new double[] {1};
+        for (int i = 0; i < componentCount; i++) {
+            long[] solutions = results.get(i).solutionsByMines;
+            before[i + 1] = new double[mineOffsets[i + 1] + 1];
+            for (int t = 0; t < before[i].length; t++) {
+                for (int m = 0; m < solutions.length; m++) {
+                    before[i + 1][t + m] += before[i][t] * solutions[m];
+                }
+            }
+            beforeScale[i + 1] = beforeScale[i] + normalize(before[i + 1]);
+        }
+
+        double[][] after = new double[componentCount + 1][];
+        double[] afterScale = new double[componentCount + 1];
+        after[componentCount] = placements;
+        afterScale[componentCount] = placementScale;
+        for (int i = componentCount - 1; i >= 0; i--) {
+            long[] solutions = results.get(i).solutionsByMines;
+            after[i] = new double[mineOffsets[i] + 1];
+            for (int t = 0; t < after[i].length; t++) {
+                for (int m = 0; m < solutions.length; m++) {
+                    after[i][t] += solutions[m] * after[i + 1][t + m];
+                }
+            }
+            afterScale[i] = afterScale[i + 1] + normalize(after[i]);
+        }
+
+        double total = after[0][0];
+        if (total == 0) {
+            // The visible board has no solution, so there is nothing to weigh
+            unconstrainedProbability = Float.NaN;
+            for (FrontierComponent component : components) {
+                for (int variable : component.getVariables()) {
+                    probabilities[variable] = 0f;
+                }
+            }
+            return;
+        }
+        double totalScale = afterScale[0];
+
+        for (int i = 0; i < componentCount; i++) {
+            FrontierComponent.Result result = results.get(i);
+            double scale = Math.exp(beforeScale[i] + afterScale[i + 1] - totalScale) / total;
+            int[] variables = components.get(i).getVariables();
+            double[] probability = new double[variables.length];
+            for (int m = 0; m < result.solutionsByMines.length; m++) {
+                double weight = 0;
+                for (int t = 0; t < before[i].length; t++) {
+                    weight += before[i][t] * after[i + 1][t + m];
+                }
+                if (weight == 0) {
+                    continue;
+                }
+                long[] mineCounts = result.mineCountsByMines[m];
+                for (int v = 0; v < variables.length; v++) {
+                    probability[v] += mineCounts[v] * weight;
+                }
+            }
+            for (int v = 0; v < variables.length; v++) {
+                probabilities[variables[v]] = (float) (probability[v] * scale);
+            }
+        }
+
+        // Every unconstrained field is equally likely to hold each of the mines left over
+        unconstrainedProbability = 0f;
+        if (unconstrainedCount > 0) {
+            double[] all = before[componentCount];
+            double scale = Math.exp(beforeScale[componentCount] + placementScale - totalScale) / total;
+            double expectedMines = 0;
+            for (int t = 0; t < all.length; t++) {
+                expectedMines += all[t] * placements[t] * (remainingMines - t);
+            }
+            unconstrainedProbability = (float) (expectedMines * scale / unconstrainedCount);
+        }
+    }
+
+    /**
+     * Fills out[t] with the number of ways to place remainingMines - t mines on the given
+     * number of fields, scaled by the returned log factor
+     */
+    private static double logBinomials(int fields, int remainingMines, double[] out) {
+        double[] logs = new double[out.length];
+        double max = Double.NEGATIVE_INFINITY;
+        // log C(fields, k) for k = remainingMines - t, walking k down from its largest valid value
+        double logBinomial = Double.NaN;
+        for (int t = 0; t < out.length; t++) {
+            int k = remainingMines - t;
+            if (k < 0 || k > fields) {
+                logs[t] = Double.NEGATIVE_INFINITY;
+                continue;
+            }
+            if (Double.isNaN(logBinomial)) {
+                logBinomial = 0;
+                for (int j = 1; j <= k; j++) {
+                    logBinomial += Math.log((double) (fields - k + j) / j);
+                }
+            } else {
+                // C(n, k) = C(n, k + 1) * (k + 1) / (n - k)
+                logBinomial += Math.log((double) (k + 1) / (fields - k));
+            }
+            logs[t] = logBinomial;
+            max = Math.max(max, logBinomial);
+        }
+        for (int t = 0; t < out.length; t++) {
+            out[t] = max == Double.NEGATIVE_INFINITY ? 0 : Math.exp(logs[t] - max);
+        }
+        return max == Double.NEGATIVE_INFINITY ? 0 : max;
+    }
+
+    /**
+     * Divides the values by their largest
+     *
+     * @return log of the divisor
+     */
+    private static double normalize(double[] values) {
+        double max = 0;
+        for (double value : values) {
+            max = Math.max(max, value);
+        }
+        if (max == 0) {
+            return 0;
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] /= max;
+        }
+        return Math.log(max);
+    }
+
+    /**
+     * @param x column of the field
+     * @param y row of the field
+     * @return probability the field is a mine as of the last update, 0 for revealed fields
+     * and fields deduced safe, 1 for flagged fields and fields deduced to be mines
+     */
+    public float getProbability(int x, int y) {
+        MinesweeperModel game = solver.getGame();
+        int cell = y * game.getGameBoardWidth() + x;
+        if (cell >= componentOf.length) {
+            return 0f;
+        }
+        if (componentOf[cell] != NO_COMPONENT && componentOf[cell] < components.size()) {
+            return probabilities[cell];
+        }
+        if (solver.isKnownMine(cell)) {
+            return 1f;
+        }
+        if (solver.isKnownSafe(cell) || game.getFieldContent(x, y) != MinesweeperModel.UNREVEALED) {
+            return 0f;
+        }
+        return unconstrainedProbability;
+    }
+
+    /**
+     * @return false if a component was too large to enumerate, so its fields were given the
+     * probability of the unconstrained fields
+     */
+    public boolean isExact() {
+        return oversized.isEmpty();
+    }
+
+    /**
+     * @return probability of a field not next to any revealed number, or NaN if the visible
+     * board has no solution
+     */
+    public float getUnconstrainedProbability() {
+        return unconstrainedProbability;
+    }
+
+    /**
+     * @return number of components the last update had to enumerate, the rest were cached
+     */
+    public int getEnumeratedCount() {
+        return enumeratedCount;
+    }
+}
@@ -1,33 +1,40 @@
 package hu.ait.android.minesweeper.model;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
-
+import java.util.concurrent.TimeoutException;
+
+import hu.ait.android.minesweeper.metrics.Metrics;
+
+/**
+ * Rules and state of a single Minesweeper game. Every game is its own instance with no shared
+ * static state, so any number of games can run side by side.
+ *
+ * Concurrency: an instance is not thread-safe. It must be confined to one thread at a time,
+ * such as the UI thread for the game played in the activities (see GameHolder). Callers that
+ * hand a game between threads must synchronize on the instance around every call. Separate
+ * instances never contend with each other.
+ */
 public class MinesweeperModel {
 
 
     //*************** Initial Values **********************
 
-    /**
-     * Instance of the MinesweeperModel
-     */
-    private static MinesweeperModel instance = null;
-
     /**
      * Number of fields wide the game board is
      */
-    public int gameBoardWidth = 6;
+    private int gameBoardWidth = 6;
 
     /**
      * Number of fields tall the game board is
      */
-    public int gameBoardHeight = 6;
+    private int gameBoardHeight = 6;
 
     /**
      * Number of mines there are in the game.
      * Must be less than gameBoardWidth * gameBoardHeight
      */
-    public int numberOfMines = 4;
+    private int numberOfMines = 4;
 
     // All possible field states
     public static final short UNREVEALED = 0;
@@ -43,44 +50,103 @@ public class MinesweeperModel {
     public static final int MEDIUM_MINE_NUMBER = 5;
     public static final int DIFFICULT_BOARD_SIZE = 9;
     public static final int DIFFICULT_MINE_NUMBER = 7;
+    public static final int EXPERT_BOARD_WIDTH = 30;
+    public static final int EXPERT_BOARD_HEIGHT = 16;
+    public static final int EXPERT_MINE_NUMBER = 99;
+
+    /**
+     * Largest width or height a custom game board can have
+     */
+    public static final int MAX_BOARD_SIZE = 4096;
 
 
     //***************** Instantiating a new instance of MinesweeperModel ********************
 
     /**
-     * Instantiates the new MinesweeperModel with the generated game board and mines
+     * Instantiates the new MinesweeperModel with an empty game board. The mines are generated
+     * when the player first touches the board.
      */
-    private MinesweeperModel () {
+    public MinesweeperModel () {
         resetModel();
         resetMines();
     }
 
-    public static MinesweeperModel getInstance() {
-        if (instance == null) {
-            instance = new MinesweeperModel();
-        }
-
-        return instance;
+    /**
+     * Instantiates a new MinesweeperModel with an empty custom game board
+     *
+     * @param width number of fields wide the game board is
+     * @param height number of fields tall the game board is
+     * @param mines number of mines in the game
+     * @throws IllegalArgumentException if the board size or number of mines is invalid
+     */
+    public MinesweeperModel(int width, int height, int mines) {
+        setCustomGameBoard(width, height, mines);
+        resetModel();
+        resetMines();
     }
 
 
 
     //******************* Game Model ****************************
 
+    // Layout of the byte stored for each field in the model array
+    private static final int STATE_MASK = 0x07;
+    private static final int NEARBY_SHIFT = 3;
+    private static final int NEARBY_MASK = 0x0F << NEARBY_SHIFT;
+
+    /**
+     * Row-major array holding one packed byte per field: the field state visible to the player
+     * in the low three bits and the number of adjacent mines in the next four bits. The number
+     * of adjacent mines is computed once when the mines are placed so looking up a field's
+     * number does not have to scan the mines.
+     */
+    private byte[] model = new byte[gameBoardHeight * gameBoardWidth];
+
+    /**
+     * If this boolean is set to true, the mines for the current game have been placed.
+     * Mines are placed on the first touch so the first revealed field is never a mine.
+     */
+    private boolean minesGenerated = false;
+
+    /**
+     * Index of the cells holding a mine, the only record of where the mines are
+     */
+    private MineIndex mineIndex;
+
+    /**
+     * Number of fields currently in each field state, indexed by the state.
+     * Kept up to date by setFieldContent so counting fields never scans the board.
+     */
+    private int[] fieldStateCounts = new int[MINE + 1];
+
     /**
-     * Matrix holding the field states visible to the player
+     * Number of flags currently placed on fields that hold a mine
      */
-    private short[][] model = new short[gameBoardHeight][gameBoardWidth];
+    private int correctFlagCount = 0;
 
     /**
-     * Matrix holding the coordinates of the mines on the game board
+     * Row-major indices of the fields whose state changed during the last call to onTouchHandler.
+     * Only the first changedCellCount entries are valid.
      */
-    private int[][] mines = new int[numberOfMines][2];
+    private int[] changedCells = new int[16];
 
     /**
-     * The current time the user has been playing the game
+     * Number of valid entries in changedCells
      */
-    private int timeCounter = 0;
+    private int changedCellCount = 0;
+
+    /**
+     * Work buffer of cell indices for the reveal flood-fill, reused between touches. Starts
+     * small and doubles when a cascade needs more, so it grows with the largest opening
+     * revealed rather than with the board.
+     */
+    private int[] revealStack = new int[256];
+
+    /**
+     * The time the user has been playing the game. Runs from the first move until the game
+     * is won or lost.
+     */
+    private final GameClock clock = new GameClock();
 
     /**
      * If the user is in Flag Mode, this boolean will be set to true.
@@ -93,12 +159,102 @@ public class MinesweeperModel {
      */
     private boolean isLost = false;
 
+    /**
+     * Number of games started on this model, so observers such as the solver can tell a
+     * restarted game from the one they last saw
+     */
+    private int gameCount = 0;
+
+    /**
+     * Number of calls to onTouchHandler since the game started
+     */
+    private int moveCount = 0;
+
+    /**
+     * Number of undos and redos since the game started, so observers can tell a move taken
+     * back from a new one
+     */
+    private int undoCount = 0;
+
+    /**
+     * Fields changed by every move of the current game, for undo and redo
+     */
+    private final ChangeHistory history = new ChangeHistory();
+
+    /**
+     * True while onTouchHandler runs, so the fields it changes go into the history
+     */
+    private boolean recordingMove = false;
+
     /**
      * If the game board had been resized from the MenuActivity, this value will be set to true so
      * the view class knows to clear the screen. This prevents game board drawing issues when the user
      * goes back to the MenuActivity and selects a new difficulty level.
      */
-    public boolean newGameBoard = true;
+    private boolean newGameBoard = true;
+
+    /**
+     * If true, the first reveal generates a board the solver can clear without guessing
+     */
+    private boolean noGuess = false;
+
+    /**
+     * Seed the mines of the current game were generated from
+     */
+    private long layoutSeed;
+
+    // Field the mines of the current game were generated around, and whether its neighbors
+    // were kept clear
+    private int layoutX;
+    private int layoutY;
+    private boolean layoutKeepSafe;
+
+    /**
+     * If true, this game records its touches and cascades into Metrics while it is enabled.
+     * Only the game played on the UI thread is instrumented.
+     */
+    private boolean instrumented = false;
+
+    /**
+     * No-guess layouts searched for ahead of time, or null to search on the first reveal
+     */
+    private NoGuessLayouts noGuessLayouts;
+
+    /**
+     * Pool new games take their cleared board from, or null to clear the board on restart
+     */
+    private BoardPool boardPool;
+
+    /**
+     * The pooled board in use, handed back to the pool on the next restart
+     */
+    private BoardPool.Board pooledBoard;
+
+    /**
+     * Journal recording the moves of every game, or null
+     */
+    private MoveJournal moveJournal;
+
+    /**
+     * Game count of the game being replayed from a journal, whose moves are not recorded
+     * again, or -1. Restarting ends the replay, since it starts a new game.
+     */
+    private int replayedGameCount = -1;
+
+    /**
+     * Random number generator for the seeds of this game's mines
+     */
+    private final Random random = new Random();
+
+    /**
+     * Random number generator the mines are placed with, seeded again for every game
+     */
+    private final Random layoutRandom = new Random();
+
+    /**
+     * Fields kept free of mines by the mine generation, in ascending order
+     */
+    private final int[] safeCells = new int[9];
 
 
     //************************** Model Getters and Setters *************************
@@ -108,6 +264,7 @@ public class MinesweeperModel {
      * 1 = easy
      * 2 = medium
      * 3 = difficult
+     * 4 = expert board that can be cleared without guessing
      */
     public void setGameDifficulty(int i) {
         switch (i) {
@@ -126,9 +283,217 @@ public class MinesweeperModel {
                 gameBoardHeight = DIFFICULT_BOARD_SIZE;
                 numberOfMines = DIFFICULT_MINE_NUMBER;
                 break;
+            case 4:
+                gameBoardWidth = EXPERT_BOARD_WIDTH;
+                gameBoardHeight = EXPERT_BOARD_HEIGHT;
+                numberOfMines = EXPERT_MINE_NUMBER;
+                break;
+        }
+        noGuess = i == 4;
+        newGameBoard = true;
+        configureBoardPool();
+        configureNoGuessLayouts();
+    }
+
+    /**
+     * Sets a custom game board size and number of mines
+     *
+     * @param width number of fields wide the game board is
+     * @param height number of fields tall the game board is
+     * @param mines number of mines in the game
+     * @throws IllegalArgumentException if the board is larger than MAX_BOARD_SIZE on a side
+     * or the mines cannot be placed on it
+     */
+    public void setCustomGameBoard(int width, int height, int mines) {
+        if (width < 1 || height < 1 || width > MAX_BOARD_SIZE || height > MAX_BOARD_SIZE) {
+            throw new IllegalArgumentException("Invalid board size: " + width + "x" + height);
         }
+        // At least one field must be free of mines
+        if (mines < 0 || mines >= width * height) {
+            throw new IllegalArgumentException("Invalid number of mines: " + mines);
+        }
+        gameBoardWidth = width;
+        gameBoardHeight = height;
+        numberOfMines = mines;
         newGameBoard = true;
+        configureBoardPool();
+        configureNoGuessLayouts();
+    }
+
+    /**
+     * Sets the pool restarted games take their cleared board from, and has it fill up with
+     * boards of the current size
+     *
+     * @param boardPool the pool, or null to clear the board on every restart
+     */
+    public void setBoardPool(BoardPool boardPool) {
+        this.boardPool = boardPool;
+        pooledBoard = null;
+        configureBoardPool();
+    }
+
+    /**
+     * Sets the journal recording the moves of this game, from the next game on
+     *
+     * @param moveJournal the journal, or null to stop recording
+     */
+    public void setMoveJournal(MoveJournal moveJournal) {
+        this.moveJournal = moveJournal;
+    }
+
+    /**
+     * Makes this game record into Metrics while it is enabled. Metrics is not thread-safe, so
+     * only the game played on the UI thread may be instrumented.
+     *
+     * @param instrumented true to record, false to never record
+     */
+    public void setInstrumented(boolean instrumented) {
+        this.instrumented = instrumented;
+    }
+
+    public MoveJournal getMoveJournal() {
+        return moveJournal;
+    }
+
+    /**
+     * Stops recording the moves of the current game, which is about to be replayed from a
+     * journal. Used by MoveReplayer after restarting the game.
+     */
+    void beginReplay() {
+        replayedGameCount = gameCount;
+    }
+
+    /**
+     * Records moves again after a replay. If the replay reached the end of this game's own
+     * journal, the journal goes on recording the moves the player makes from there.
+     *
+     * @param journal the journal that was replayed
+     */
+    void endReplay(MoveJournal journal) {
+        if (replayedGameCount == gameCount && journal == moveJournal) {
+            moveJournal.resume(gameCount, moveCount);
+        }
+        replayedGameCount = -1;
+    }
+
+    /**
+     * @return true if the moves of the current game are recorded
+     */
+    private boolean isJournaling() {
+        return moveJournal != null && gameCount != replayedGameCount;
+    }
+
+    private void configureBoardPool() {
+        if (boardPool != null) {
+            boardPool.configure(gameBoardWidth, gameBoardHeight, numberOfMines);
+        }
     }
+
+    /**
+     * Sets where no-guess games take their layout from, and has it search layouts for the
+     * current board settings while they are no-guess
+     *
+     * @param noGuessLayouts the layouts, or null to search on the first reveal, which blocks
+     * the thread playing the game for up to NoGuessGenerator.DEFAULT_TIMEOUT_MILLIS
+     */
+    public void setNoGuessLayouts(NoGuessLayouts noGuessLayouts) {
+        this.noGuessLayouts = noGuessLayouts;
+        configureNoGuessLayouts();
+    }
+
+    private void configureNoGuessLayouts() {
+        if (noGuessLayouts == null) {
+            return;
+        }
+        if (noGuess) {
+            noGuessLayouts.configure(gameBoardWidth, gameBoardHeight, numberOfMines);
+        } else {
+            noGuessLayouts.pause();
+        }
+    }
+
+    /**
+     * Gets the difficulty level the board settings match, numbered as in setGameDifficulty.
+     * Worked out from the settings, so it survives restoring a saved game.
+     *
+     * @return 1 to 4, or 0 for a custom board
+     */
+    public int getDifficulty() {
+        if (gameBoardWidth == gameBoardHeight) {
+            if (gameBoardWidth == EASY_BOARD_SIZE && numberOfMines == EASY_MINE_NUMBER) {
+                return 1;
+            } else if (gameBoardWidth == MEDIUM_BOARD_SIZE && numberOfMines == MEDIUM_MINE_NUMBER) {
+                return 2;
+            } else if (gameBoardWidth == DIFFICULT_BOARD_SIZE && numberOfMines == DIFFICULT_MINE_NUMBER) {
+                return 3;
+            }
+        } else if (gameBoardWidth == EXPERT_BOARD_WIDTH && gameBoardHeight == EXPERT_BOARD_HEIGHT
+                && numberOfMines == EXPERT_MINE_NUMBER && noGuess) {
+            return 4;
+        }
+        return 0;
+    }
+
+    /**
+     * @return true if new games are generated so they can be cleared without guessing
+     */
+    public boolean isNoGuess() {
+        return noGuess;
+    }
+
+    /**
+     * Sets whether the mines generated by the next first reveal must be solvable without
+     * guessing. Games started with a flag are always random.
+     *
+     * @param noGuess true for boards that can be cleared without guessing
+     */
+    public void setNoGuess(boolean noGuess) {
+        this.noGuess = noGuess;
+        configureNoGuessLayouts();
+    }
+
+    /**
+     * @return seed the mines of the current game were generated from
+     */
+    public long getLayoutSeed() {
+        return layoutSeed;
+    }
+
+    /**
+     * @return number of fields wide the game board is
+     */
+    public int getGameBoardWidth() {
+        return gameBoardWidth;
+    }
+
+    /**
+     * @return number of fields tall the game board is
+     */
+    public int getGameBoardHeight() {
+        return gameBoardHeight;
+    }
+
+    /**
+     * @return number of mines there are in the game
+     */
+    public int getNumberOfMines() {
+        return numberOfMines;
+    }
+
+    /**
+     * @return true if the game board was resized and the view has not cleared the screen yet
+     */
+    public boolean isNewGameBoard() {
+        return newGameBoard;
+    }
+
+    /**
+     * @param newGameBoard false once the view has cleared the screen for a resized game board
+     */
+    public void setNewGameBoard(boolean newGameBoard) {
+        this.newGameBoard = newGameBoard;
+    }
+
     /**
      * Gets the content in the desired field from the game model
      *
@@ -137,7 +502,7 @@ public class MinesweeperModel {
      * @return content of desired field
      */
     public short getFieldContent(int x, int y) {
-        return model[y][x];
+        return (short) (model[y * gameBoardWidth + x] & STATE_MASK);
     }
 
     /**
@@ -148,7 +513,36 @@ public class MinesweeperModel {
      * @param content updated game state of the field
      */
     public void setFieldContent(int x, int y, short content) {
-        model[y][x] = content;
+        setFieldContent(y * gameBoardWidth + x, content);
+    }
+
+    /**
+     * Sets the content of the given field, keeping the counters, the changed fields and the
+     * history up to date
+     *
+     * @param cell row-major index of the field
+     * @param content updated game state of the field
+     */
+    private void setFieldContent(int cell, short content) {
+        int oldContent = model[cell] & STATE_MASK;
+        model[cell] = (byte) ((model[cell] & ~STATE_MASK) | content);
+        if (oldContent != content) {
+            recordChangedCell(cell);
+            if (recordingMove) {
+                history.recordChange(cell, oldContent, content);
+            }
+        }
+
+        fieldStateCounts[oldContent]--;
+        fieldStateCounts[content]++;
+        if (mineIndex.contains(cell)) {
+            if (oldContent == MinesweeperModel.FLAG) {
+                correctFlagCount--;
+            }
+            if (content == MinesweeperModel.FLAG) {
+                correctFlagCount++;
+            }
+        }
     }
 
     /**
@@ -166,35 +560,79 @@ public class MinesweeperModel {
         flagMode = !flagMode;
     }
 
-    /**
-     * Updates the time counter to the new time
-     */
-    public void incrementTimeCounter() {
-        timeCounter++;
-    }
-
     /**
      * Resets the time counter to 0
      */
     public void resetTimeCounter() {
-        timeCounter = 0;
+        clock.reset(0);
     }
 
     /**
      * Gets the time the player has been playing
      *
-     * @return the current time since the game started
+     * @return the whole seconds since the game started
      */
     public int getTimeCounter() {
-        return timeCounter;
+        return clock.getElapsedSeconds();
+    }
+
+    /**
+     * @return the milliseconds the player has been playing
+     */
+    public long getElapsedMillis() {
+        return clock.getElapsedMillis();
+    }
+
+    /**
+     * @return the game's clock, to read. The game starts and stops it.
+     */
+    public GameClock getClock() {
+        return clock;
     }
 
     /**
-     * Getter for the array of mines on the game board
+     * Stops the clock while the game is not shown
+     */
+    public void pauseClock() {
+        clock.pause();
+    }
+
+    /**
+     * Starts the clock again when the game is shown, if the game is in progress
+     */
+    public void resumeClock() {
+        if (moveCount > 0 && !isLost && !isWon()) {
+            clock.start();
+        }
+    }
+
+    /**
+     * Runs the clock while the game is in progress and stops it once the game is over
+     */
+    private void updateClock() {
+        if (isLost || isWon()) {
+            clock.pause();
+        } else {
+            clock.start();
+        }
+    }
+
+    /**
+     * Getter for the array of mines on the game board. Built from the mine index on every
+     * call, so it is meant for occasional use such as revealing the board at the end of a game.
      *
-     * @return A matrix of all mines' coordinates
+     * @return A matrix of all mines' coordinates, as row and column, in row-major order
      */
     public int[][] getMines() {
+        if (!minesGenerated) {
+            return new int[0][2];
+        }
+        int[] cells = mineIndex.toArray();
+        int[][] mines = new int[cells.length][2];
+        for (int i = 0; i < cells.length; i++) {
+            mines[i][0] = cells[i] / gameBoardWidth;
+            mines[i][1] = cells[i] % gameBoardWidth;
+        }
         return mines;
     }
 
@@ -225,11 +663,53 @@ public class MinesweeperModel {
         return isLost;
     }
 
+    /**
+     * Starts a new game with the current board settings. Takes a cleared board from the board
+     * pool if one is ready, which is constant time, and clears the board otherwise.
+     */
     public void restartGame() {
-        resetModel();
+        BoardPool.Board board = boardPool == null ? null
+                : boardPool.take(gameBoardWidth, gameBoardHeight, numberOfMines);
+        if (board != null) {
+            if (pooledBoard != null) {
+                boardPool.recycle(pooledBoard);
+            }
+            pooledBoard = board;
+            model = board.fields;
+            resetCounts();
+        } else {
+            // Keep the current board and clear it here, it is no longer the pool's to reuse
+            pooledBoard = null;
+            resetModel();
+        }
         resetMines();
         resetTimeCounter();
         isLost = false;
+        gameCount++;
+        moveCount = 0;
+        undoCount = 0;
+        history.clear();
+    }
+
+    /**
+     * @return number of games started on this model
+     */
+    public int getGameCount() {
+        return gameCount;
+    }
+
+    /**
+     * @return number of touches since the current game started
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * @return number of undos and redos since the current game started
+     */
+    public int getUndoCount() {
+        return undoCount;
     }
 
 
@@ -243,14 +723,10 @@ public class MinesweeperModel {
      * @return true if the given field is a mine, false othewise
      */
     public boolean isMine(int x, int y) {
-        for (int i = 0; i < numberOfMines; i++) {
-            if (mines[i][0] == y) {
-                if (mines[i][1] == x) {
-                    return true;
-                }
-            }
+        if (x < 0 || y < 0 || x >= gameBoardWidth || y >= gameBoardHeight) {
+            return false;
         }
-        return false;
+        return mineIndex.contains(y * gameBoardWidth + x);
     }
 
     /**
@@ -260,16 +736,52 @@ public class MinesweeperModel {
      * @return int representing the number of fields with the given state
      */
     public int gameBoardCounter(short fieldState) {
-        int total = 0;
-        for (int i = 0; i < gameBoardHeight; i++) {
-            for (int j = 0; j < gameBoardWidth; j++) {
-                if (getFieldContent(j, i) == fieldState) {
-                    total++;
-                }
+        return fieldStateCounts[fieldState];
+    }
 
-            }
+    /**
+     * @return the number of fields the player has revealed, empty or number
+     */
+    public int getRevealedCount() {
+        return fieldStateCounts[MinesweeperModel.EMPTY] + fieldStateCounts[MinesweeperModel.NUMBER];
+    }
+
+    /**
+     * @return the number of flags placed on fields that hold a mine
+     */
+    public int getCorrectFlagCount() {
+        return correctFlagCount;
+    }
+
+    /**
+     * Gets the fields whose state changed during the last call to onTouchHandler, undo or redo,
+     * as row-major cell indices (y * gameBoardWidth + x). Only the first getChangedCellCount()
+     * entries are valid, and the array is reused by the next touch.
+     *
+     * @return array of changed cell indices
+     */
+    public int[] getChangedCells() {
+        return changedCells;
+    }
+
+    /**
+     * @return number of fields whose state changed during the last call to onTouchHandler,
+     * undo or redo
+     */
+    public int getChangedCellCount() {
+        return changedCellCount;
+    }
+
+    /**
+     * Adds the given cell to the set of fields changed by the current touch
+     *
+     * @param cell row-major index of the changed field
+     */
+    private void recordChangedCell(int cell) {
+        if (changedCellCount == changedCells.length) {
+            changedCells = Arrays.copyOf(changedCells, changedCells.length * 2);
         }
-        return total;
+        changedCells[changedCellCount++] = cell;
     }
 
     //********************** Game State Getters and Setters ********************
@@ -281,24 +793,48 @@ public class MinesweeperModel {
      * @return true if the player won the game, false otherwise
      */
     public boolean isWon() {
-        for (int i = 0; i < numberOfMines; i++) {
-            short field = getMineFieldContent(mines[i]);
-            if (field != MinesweeperModel.FLAG) {
-                return false;
-            }
-        }
-        return true;
+        return minesGenerated && correctFlagCount == numberOfMines;
     }
 
     /**
-     * Updates the game model when the user touches at the given coordinates
+     * Updates the game model when the user touches at the given coordinates, placing a flag if
+     * the game is in flag mode and trying the field otherwise
      *
      * @param x column of the field touched
      * @param y row of the field touched
      */
     public void onTouchHandler(int x, int y) {
+        onTouchHandler(x, y, flagMode);
+    }
+
+    /**
+     * Updates the game model when the user touches at the given coordinates, independent of
+     * the game's flag mode
+     *
+     * @param x column of the field touched
+     * @param y row of the field touched
+     * @param placeFlag true to place or remove a flag, false to try the field
+     */
+    public void onTouchHandler(int x, int y, boolean placeFlag) {
+        long startNanos = instrumented ? Metrics.startTimer() : 0;
+        changedCellCount = 0;
+        moveCount++;
+        if (!minesGenerated) {
+            // A first reveal must be safe, a first flag is placed blind
+            generateMines(x, y, !placeFlag);
+        }
+        if (isJournaling()) {
+            long now = System.currentTimeMillis();
+            if (moveCount == 1 && undoCount == 0) {
+                moveJournal.begin(gameCount, gameBoardWidth, gameBoardHeight, numberOfMines, layoutSeed,
+                        layoutX, layoutY, layoutKeepSafe, now);
+            }
+            moveJournal.record(gameCount, moveCount, x, y, placeFlag, now);
+        }
+        history.beginMove(x, y, placeFlag, isLost);
+        recordingMove = true;
         short field = getFieldContent(x, y);
-        if (flagMode) {
+        if (placeFlag) {
             if (field == MinesweeperModel.FLAG) {
                 setFieldContent(x, y, MinesweeperModel.UNREVEALED);
             } else if (isMine(x, y)) {
@@ -318,91 +854,131 @@ public class MinesweeperModel {
                 }
             }
         }
+        recordingMove = false;
+        history.endMove(isLost);
+        updateClock();
+        Metrics.recordSince(Metrics.TOUCH_NANOS, startNanos);
     }
 
+    //******************************* Undo and Redo *******************************
+
     /**
-     * Reveals empty and number fields adjacent to the given field. Only called on empty fields.
+     * A finished game cannot be taken back, since its outcome is already in the statistics,
+     * which record each game once.
      *
-     * @param x x coordinate of the given field
-     * @param y y coordinate of the given field
+     * @return true if there is a move of the current game to take back
      */
-    private void revealAllAdjacentFields(int x, int y) {
-        // We can assume no mine will be found here because this function is only called
-        // on empty fields so only empty or number fields can be adjacent
-        if ((y - 1) >= 0 && getFieldContent(x, y - 1) == MinesweeperModel.UNREVEALED) {
-            if (numberOfMinesNearby(x, y - 1) > 0) {
-                setFieldContent(x, y - 1, MinesweeperModel.NUMBER);
-                revealHorizontalAdjacentFields(x, y - 1);
-            } else {
-                setFieldContent(x, y - 1, MinesweeperModel.EMPTY);
-                revealAllAdjacentFields(x, y - 1);
-            }
+    public boolean canUndo() {
+        return !isLost && !isWon() && history.canUndo();
+    }
+
+    /**
+     * @return true if there is a taken back move to apply again
+     */
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    /**
+     * Takes back the last move: restores the fields it changed, in reverse order, and whether
+     * the game was lost. Takes time proportional to the fields the move changed, which are
+     * then the changed fields. The mines stay where they are, even when undoing the first move.
+     *
+     * @return false if there was no move to take back, or the game is over
+     */
+    public boolean undo() {
+        if (!canUndo()) {
+            return false;
         }
-        if ((y + 1) < gameBoardHeight && getFieldContent(x, y + 1) == MinesweeperModel.UNREVEALED) {
-            if (numberOfMinesNearby(x, y + 1) > 0) {
-                setFieldContent(x, y + 1, MinesweeperModel.NUMBER);
-                revealHorizontalAdjacentFields(x, y + 1);
-            } else {
-                setFieldContent(x, y + 1, MinesweeperModel.EMPTY);
-                revealAllAdjacentFields(x, y + 1);
-            }
+        changedCellCount = 0;
+        int move = history.undoMove();
+        for (int change = history.moveEnd(move) - 1; change >= history.moveStart(move); change--) {
+            setFieldContent(history.cell(change), history.stateBefore(change));
         }
-        if ((x - 1) >= 0 && getFieldContent(x - 1, y) == MinesweeperModel.UNREVEALED) {
-            if (numberOfMinesNearby(x - 1, y) > 0) {
-                setFieldContent(x - 1, y, MinesweeperModel.NUMBER);
-                revealVerticalAdjacentFields(x - 1, y);
-            } else {
-                setFieldContent(x - 1, y, MinesweeperModel.EMPTY);
-                revealAllAdjacentFields(x - 1, y);
-            }
+        isLost = history.isLostBefore(move);
+        if (moveCount == 1 || isWon()) {
+            clock.pause();
+        } else {
+            updateClock();
         }
-        if((x + 1) < gameBoardWidth && getFieldContent(x + 1, y) == MinesweeperModel.UNREVEALED) {
-            if (numberOfMinesNearby(x + 1, y) > 0) {
-                setFieldContent(x + 1, y, MinesweeperModel.NUMBER);
-                revealVerticalAdjacentFields(x + 1, y);
-            } else {
-                setFieldContent(x + 1, y, MinesweeperModel.EMPTY);
-                revealAllAdjacentFields(x + 1, y);
-            }
+        moveCount--;
+        undoCount++;
+        if (isJournaling()) {
+            moveJournal.truncate(gameCount, moveCount);
         }
+        return true;
     }
 
-
-    private void revealHorizontalAdjacentFields(int x, int y) {
-        if ((x - 1) >= 0 && getFieldContent(x - 1, y) == MinesweeperModel.UNREVEALED && !isMine(x - 1, y)) {
-            if (numberOfMinesNearby(x - 1, y) > 0) {
-                setFieldContent(x - 1, y, MinesweeperModel.NUMBER);
-            } else {
-                setFieldContent(x - 1, y, MinesweeperModel.EMPTY);
-                revealAllAdjacentFields(x - 1, y);
-            }
+    /**
+     * Applies the last taken back move again. Takes time proportional to the fields the move
+     * changed, which are then the changed fields.
+     *
+     * @return false if there was no move to apply again
+     */
+    public boolean redo() {
+        if (!history.canRedo()) {
+            return false;
         }
-        if((x + 1) < gameBoardWidth && getFieldContent(x + 1, y) == MinesweeperModel.UNREVEALED && !isMine(x + 1, y)) {
-            if (numberOfMinesNearby(x + 1, y) > 0) {
-                setFieldContent(x + 1, y, MinesweeperModel.NUMBER);
-            } else {
-                setFieldContent(x + 1, y, MinesweeperModel.EMPTY);
-                revealAllAdjacentFields(x + 1, y);
-            }
+        changedCellCount = 0;
+        int move = history.redoMove();
+        for (int change = history.moveStart(move); change < history.moveEnd(move); change++) {
+            setFieldContent(history.cell(change), history.stateAfter(change));
         }
+        isLost = history.isLostAfter(move);
+        updateClock();
+        moveCount++;
+        undoCount++;
+        if (isJournaling()) {
+            moveJournal.record(gameCount, moveCount, history.moveX(move), history.moveY(move),
+                    history.isPlaceFlag(move), System.currentTimeMillis());
+        }
+        return true;
     }
 
-    private void revealVerticalAdjacentFields(int x, int y) {
-        if ((y - 1) >= 0 && getFieldContent(x, y - 1) == MinesweeperModel.UNREVEALED && !isMine(x, y - 1)) {
-            if (numberOfMinesNearby(x, y - 1) > 0) {
-                setFieldContent(x, y - 1, MinesweeperModel.NUMBER);
-            } else {
-                setFieldContent(x, y - 1, MinesweeperModel.EMPTY);
-                revealAllAdjacentFields(x, y - 1);
+    /**
+     * Reveals the whole opening around the given field: every field 8-connected to it through
+     * empty fields, plus the number fields bordering them. Only called on empty fields.
+     *
+     * Uses an explicit stack of cell indices instead of recursion so there is no depth limit,
+     * and each field is pushed at most once, so the work is linear in the number of fields revealed.
+     *
+     * @param x x coordinate of the given field
+     * @param y y coordinate of the given field
+     */
+    private void revealAllAdjacentFields(int x, int y) {
+        long startNanos = instrumented ? Metrics.startTimer() : 0;
+        int firstChangedCell = changedCellCount;
+        int top = 0;
+        revealStack[top++] = y * gameBoardWidth + x;
+
+        while (top > 0) {
+            int cell = revealStack[--top];
+            int cellX = cell % gameBoardWidth;
+            int cellY = cell / gameBoardWidth;
+
+            // We can assume no mine will be found here because only empty fields are expanded
+            // so only empty or number fields can be adjacent
+            for (int row = Math.max(0, cellY - 1); row <= Math.min(gameBoardHeight - 1, cellY + 1); row++) {
+                for (int col = Math.max(0, cellX - 1); col <= Math.min(gameBoardWidth - 1, cellX + 1); col++) {
+                    if (getFieldContent(col, row) == MinesweeperModel.UNREVEALED) {
+                        if (numberOfMinesNearby(col, row) > 0) {
+                            setFieldContent(col, row, MinesweeperModel.NUMBER);
+                        } else {
+                            // Marking the field before pushing it keeps it from being pushed twice
+                            setFieldContent(col, row, MinesweeperModel.EMPTY);
+                            if (top == revealStack.length) {
+                                revealStack = Arrays.copyOf(revealStack, revealStack.length * 2);
+                            }
+                            revealStack[top++] = row * gameBoardWidth + col;
+                        }
+                    }
+                }
             }
         }
-        if ((y + 1) < gameBoardHeight && getFieldContent(x, y + 1) == MinesweeperModel.UNREVEALED && !isMine(x, y + 1)) {
-            if (numberOfMinesNearby(x, y + 1) > 0) {
-                setFieldContent(x, y + 1, MinesweeperModel.NUMBER);
-            } else {
-                setFieldContent(x, y + 1, MinesweeperModel.EMPTY);
-                revealAllAdjacentFields(x, y + 1);
-            }
+        if (instrumented) {
+            Metrics.recordSince(Metrics.CASCADE_NANOS, startNanos);
+            // The empty field the cascade starts from was revealed just before it
+            Metrics.record(Metrics.CASCADE_CELLS, changedCellCount - firstChangedCell + 1);
         }
     }
 
@@ -411,47 +987,166 @@ public class MinesweeperModel {
      * Resets all field states to the beginning state
      */
     private void resetModel() {
-        model = new short[gameBoardHeight][gameBoardWidth];
-        for (int x = 0; x < gameBoardWidth; x++) {
-            for (int y = 0; y < gameBoardHeight; y++) {
-                setFieldContent(x, y, MinesweeperModel.UNREVEALED);
-            }
+        // A zeroed field is UNREVEALED with no mines nearby
+        if (model.length == gameBoardWidth * gameBoardHeight) {
+            Arrays.fill(model, (byte) 0);
+        } else {
+            model = new byte[gameBoardWidth * gameBoardHeight];
         }
+        resetCounts();
+    }
+
+    /**
+     * Resets the field counters and changed fields for a board of only unrevealed fields
+     */
+    private void resetCounts() {
+        Arrays.fill(fieldStateCounts, 0);
+        fieldStateCounts[MinesweeperModel.UNREVEALED] = model.length;
+        correctFlagCount = 0;
+        changedCellCount = 0;
     }
 
     /**
-     * Generates new random mines
+     * Removes the mines of the previous game, clearing its index rather than allocating one if
+     * the board size and number of mines still suit it. The new mines are generated on the
+     * first touch.
      */
     private void resetMines() {
-        mines = new int[numberOfMines][2];
-        Random randomCoordinate = new Random();
-        ArrayList<Integer> columnValues = new ArrayList<Integer>();
-        ArrayList<Integer> rowValues = new ArrayList<Integer>();
-
-        for (int i = 0; i < numberOfMines; i++) {
-            boolean mineSet = false;
-
-            while (!mineSet) {
-                int newCol = randomCoordinate.nextInt(gameBoardWidth);
-                int newRow = randomCoordinate.nextInt(gameBoardHeight);
-
-                // Ensures there is not already a mine in the randomly chosen field
-                if (!columnValues.contains(newCol) && !rowValues.contains(newRow)) {
-                    mines[i][0] = newRow;
-                    mines[i][1] = newCol;
-                    columnValues.add(newCol);
-                    rowValues.add(newRow);
-                    mineSet = true;
-                }
+        int numberOfCells = gameBoardWidth * gameBoardHeight;
+        if (pooledBoard != null) {
+            // A pooled board comes with an empty index sized for the mines
+            mineIndex = pooledBoard.mineIndex;
+        } else if (mineIndex != null && mineIndex.fits(numberOfCells, numberOfMines)) {
+            mineIndex.clear();
+        } else {
+            mineIndex = new MineIndex(numberOfCells, numberOfMines);
+        }
+        minesGenerated = false;
+    }
+
+    /**
+     * Picks the seed of the new mines and generates them. In no-guess mode, a first reveal
+     * takes a layout searched ahead from the no-guess layouts. Without those, it searches for
+     * a seed the solver can clear from the touched field, and falls back to a random seed if
+     * none is found in time.
+     *
+     * @param safeX X coordinate of the touched field
+     * @param safeY Y coordinate of the touched field
+     * @param keepSafe if false, the touched field may hold a mine too
+     */
+    private void generateMines(int safeX, int safeY, boolean keepSafe) {
+        long seed = random.nextLong();
+        if (noGuess && keepSafe && noGuessLayouts != null) {
+            // A game with layouts searched ahead is played on the UI thread, which must not
+            // wait for a search, so a field none of them covers keeps the random seed
+            NoGuessLayouts.Layout layout =
+                    noGuessLayouts.take(gameBoardWidth, gameBoardHeight, numberOfMines, safeX, safeY);
+            if (layout != null) {
+                // The touched field is in the layout's opening, so the touch opens it the same way
+                generateMines(layout.safeX, layout.safeY, true, layout.seed);
+                return;
             }
+        } else if (noGuess && keepSafe) {
+            try {
+                seed = NoGuessGenerator.findSeed(gameBoardWidth, gameBoardHeight, numberOfMines, safeX, safeY,
+                        NoGuessGenerator.DEFAULT_TIMEOUT_MILLIS);
+            } catch (TimeoutException e) {
+                // Keep the random seed, the board may need a guess
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        generateMines(safeX, safeY, keepSafe, seed);
+    }
 
+    /**
+     * Generates new random mines, keeping the touched field, and its neighbors if there is
+     * room, free of mines. Expects the model to have just been reset so every field has no
+     * mines nearby.
+     *
+     * Uses Floyd's sampling over the indices of the fields that may hold a mine, which picks a
+     * uniformly random set of numberOfMines distinct fields with exactly one random number per
+     * mine, so it takes O(numberOfMines) time at any density.
+     *
+     * @param safeX X coordinate of the touched field
+     * @param safeY Y coordinate of the touched field
+     * @param keepSafe if false, the touched field may hold a mine too
+     * @param seed seed deciding where the mines go
+     */
+    void generateMines(int safeX, int safeY, boolean keepSafe, long seed) {
+        layoutRandom.setSeed(seed);
+        layoutSeed = seed;
+        layoutX = safeX;
+        layoutY = safeY;
+        layoutKeepSafe = keepSafe;
+        int numberOfCells = gameBoardWidth * gameBoardHeight;
+
+        int safeCount = 0;
+        if (keepSafe) {
+            for (int row = Math.max(0, safeY - 1); row <= Math.min(gameBoardHeight - 1, safeY + 1); row++) {
+                for (int col = Math.max(0, safeX - 1); col <= Math.min(gameBoardWidth - 1, safeX + 1); col++) {
+                    safeCells[safeCount++] = row * gameBoardWidth + col;
+                }
+            }
+            if (numberOfCells - safeCount < numberOfMines) {
+                // Too crowded to keep the neighbors clear, so only the touched field is safe
+                safeCells[0] = safeY * gameBoardWidth + safeX;
+                safeCount = 1;
+            }
+        }
 
+        int candidates = numberOfCells - safeCount;
+        for (int j = candidates - numberOfMines; j < candidates; j++) {
+            int cell = toCellIndex(layoutRandom.nextInt(j + 1), safeCells, safeCount);
+            // If the chosen field is taken, j itself cannot be, because only fields below j
+            // have been candidates so far
+            if (!mineIndex.add(cell)) {
+                cell = toCellIndex(j, safeCells, safeCount);
+                mineIndex.add(cell);
+            }
+            updateNearbyMines(cell % gameBoardWidth, cell / gameBoardWidth, 1);
         }
+        minesGenerated = true;
+    }
 
+    /**
+     * Maps the index of a field among those that may hold a mine to its row-major cell index by
+     * skipping over the safe fields
+     *
+     * @param candidate index among the fields that may hold a mine
+     * @param safeCells row-major indices of the safe fields, in ascending order
+     * @param safeCount number of valid entries in safeCells
+     * @return row-major cell index of the field
+     */
+    private static int toCellIndex(int candidate, int[] safeCells, int safeCount) {
+        int cell = candidate;
+        for (int i = 0; i < safeCount && safeCells[i] <= cell; i++) {
+            cell++;
+        }
+        return cell;
     }
 
 
 
+    /**
+     * Adds the given amount to the nearby mine count of every field adjacent to the given field.
+     * Must be called with 1 whenever a mine is placed and with -1 whenever a mine is removed so
+     * the counts stay in sync with the mines.
+     *
+     * @param x X coordinate of the mine
+     * @param y Y coordinate of the mine
+     * @param delta amount to add to the count of each adjacent field
+     */
+    private void updateNearbyMines(int x, int y, int delta) {
+        for (int row = Math.max(0, y - 1); row <= Math.min(gameBoardHeight - 1, y + 1); row++) {
+            for (int col = Math.max(0, x - 1); col <= Math.min(gameBoardWidth - 1, x + 1); col++) {
+                if (row != y || col != x) {
+                    model[row * gameBoardWidth + col] += delta << NEARBY_SHIFT;
+                }
+            }
+        }
+    }
+
     /**
      * Returns the number of mines in the fields adjacent to the given field
      *
@@ -460,34 +1155,98 @@ public class MinesweeperModel {
      * @return The number of mines nearby
      */
     public int numberOfMinesNearby(int x, int y) {
-        int numberOfNearbyMines = 0;
+        return (model[y * gameBoardWidth + x] & NEARBY_MASK) >>> NEARBY_SHIFT;
+    }
 
-        if (isMine(x - 1, y - 1)) {
-            numberOfNearbyMines++;
-        }
-        if (isMine(x - 1, y)) {
-            numberOfNearbyMines++;
-        }
-        if (isMine(x - 1, y + 1)) {
-            numberOfNearbyMines++;
-        }
-        if (isMine(x, y - 1)) {
-            numberOfNearbyMines++;
-        }
-        if (isMine(x, y + 1)) {
-            numberOfNearbyMines++;
-        }
-        if (isMine(x + 1, y - 1)) {
-            numberOfNearbyMines++;
+
+    //******************* Snapshots ****************************
+
+    /**
+     * Starts restoring a saved game: sets the board and game state and clears the board for
+     * restoreMine, restoreFieldState and finishRestore to fill in. Used by GameSnapshot.
+     *
+     * @throws IllegalArgumentException if the board size or number of mines is invalid
+     */
+    void beginRestore(int width, int height, int mines, long seed, long timeMillis, int moves,
+                      boolean lost, boolean flagModeOn, boolean noGuessOn, boolean generated) {
+        setCustomGameBoard(width, height, mines);
+        setNoGuess(noGuessOn);
+        restartGame();
+        layoutSeed = seed;
+        clock.reset(timeMillis);
+        moveCount = moves;
+        isLost = lost;
+        flagMode = flagModeOn;
+        newGameBoard = false;
+        minesGenerated = generated;
+    }
+
+    /**
+     * Places a mine of a game being restored
+     *
+     * @param cell row-major index of the mine
+     * @return false if the game already has all of its mines, or this one
+     */
+    boolean restoreMine(int cell) {
+        if (mineIndex.size() == numberOfMines || !mineIndex.add(cell)) {
+            return false;
         }
-        if (isMine(x + 1, y)) {
-            numberOfNearbyMines++;
+        updateNearbyMines(cell % gameBoardWidth, cell / gameBoardWidth, 1);
+        return true;
+    }
+
+    /**
+     * Sets the state of a field of a game being restored, without updating any counter.
+     * Revealed fields may be given as EMPTY or NUMBER, finishRestore picks the right one.
+     */
+    void restoreFieldState(int cell, short content) {
+        model[cell] = (byte) ((model[cell] & ~STATE_MASK) | content);
+    }
+
+    /**
+     * Finishes restoring a game: fixes the revealed fields and recounts the field states
+     *
+     * @return false if the game does not have all of its mines
+     */
+    boolean finishRestore() {
+        if (mineIndex.size() != (minesGenerated ? numberOfMines : 0)) {
+            return false;
         }
-        if (isMine(x + 1, y + 1)) {
-            numberOfNearbyMines++;
+        Arrays.fill(fieldStateCounts, 0);
+        for (int cell = 0; cell < model.length; cell++) {
+            int content = model[cell] & STATE_MASK;
+            if (content == MinesweeperModel.EMPTY || content == MinesweeperModel.NUMBER) {
+                content = (model[cell] & NEARBY_MASK) == 0 ? MinesweeperModel.EMPTY : MinesweeperModel.NUMBER;
+                model[cell] = (byte) ((model[cell] & ~STATE_MASK) | content);
+            } else if (content == MinesweeperModel.FLAG && mineIndex.contains(cell)) {
+                correctFlagCount++;
+            }
+            fieldStateCounts[content]++;
         }
+        return true;
+    }
+
+    /**
+     * @param cell row-major index of a field
+     * @return state of the field
+     */
+    short getFieldContent(int cell) {
+        return (short) (model[cell] & STATE_MASK);
+    }
 
-        return numberOfNearbyMines;
+    /**
+     * @param cell row-major index of a field
+     * @return true if the field holds a mine
+     */
+    boolean isMine(int cell) {
+        return mineIndex.contains(cell);
+    }
+
+    /**
+     * @return true if the mines of the current game have been generated
+     */
+    public boolean areMinesGenerated() {
+        return minesGenerated;
     }
 
 
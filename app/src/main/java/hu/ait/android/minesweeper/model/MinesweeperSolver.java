@@ -0,0 +1,821 @@
+package hu.ait.android.minesweeper.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Finds the fields of a game that are provably safe and provably mines, using only what the
+ * player can see: revealed numbers and flags. Flags count as known mines, since a wrong flag
+ * loses the game.
+ *
+ * Deductions are made in three stages: single number fields (all of a number's mines found,
+ * or all its unrevealed neighbors must be mines), pairs of number fields whose unrevealed
+ * neighbors are a subset of one another, and exact enumeration of every mine layout of an
+ * independent frontier component. The local rules run to a fixed point first, then every
+ * component that changed is enumerated, in parallel, and the rules run again on what that
+ * found. A field is provable if the numbers decide it, with the number of mines left as an
+ * upper bound on each component on its own. Components larger than MAX_COMPONENT_VARIABLES are
+ * not enumerated, so the results only hold every provable field while isComplete is true.
+ *
+ * The solver is incremental: update reads the fields changed by the game's last touch and
+ * only re-examines the number fields around them, and only components touched since the last
+ * enumeration are enumerated again. If it misses moves or the game restarts, it rebuilds
+ * from the whole board.
+ *
+ * Like the game it reads, a solver must be confined to one thread.
+ */
+public class MinesweeperSolver {
+
+    /**
+     * Largest component that is enumerated. Larger components are left to the cheaper rules
+     * so a hint always comes back within a frame, and are enumerated again on every update
+     * until they shrink.
+     */
+    public static final int MAX_COMPONENT_VARIABLES = 40;
+
+    // What the solver knows about each field
+    private static final byte UNKNOWN = 0;
+    private static final byte SAFE = 1;
+    private static final byte KNOWN_MINE = 2;
+
+    /**
+     * Shared pool for enumerating components, one daemon thread per core
+     */
+    private static ExecutorService enumerationPool;
+
+    private final MinesweeperModel game;
+
+    /**
+     * Whether components are enumerated on the shared pool or on the calling thread
+     */
+    private final boolean parallel;
+
+    private int width;
+    private int height;
+
+    /**
+     * What the solver knows about each field, indexed by the row-major cell index
+     */
+    private byte[] known = new byte[0];
+
+    // Game and move the solver last caught up with
+    private int lastGameCount = -1;
+    private int lastMoveCount = -1;
+    private int lastUndoCount = -1;
+
+    /**
+     * Number of times the solver re-read the whole board, which resets the deduction lists
+     */
+    private int rebuildCount = 0;
+
+    // Stack of number fields whose neighborhood changed, with a flag so none is pushed twice
+    private int[] pending = new int[0];
+    private boolean[] isPending = new boolean[0];
+    private int pendingCount = 0;
+
+    // Unrevealed fields whose component changed since it was last enumerated
+    private int[] dirtyVariables = new int[0];
+    private boolean[] isDirtyVariable = new boolean[0];
+    private int dirtyVariableCount = 0;
+
+    /**
+     * Number of components too large to enumerate found by the last update
+     */
+    private int oversizedComponentCount = 0;
+
+    /**
+     * Number of mines not yet found when the components were last enumerated, the most any of
+     * their solutions could hold, or 0 if nothing was enumerated since the last rebuild
+     */
+    private int enumeratedMineLimit = 0;
+
+    // Every field deduced safe or a mine, in the order they were found
+    private int[] deducedSafe = new int[16];
+    private int deducedSafeCount = 0;
+    private int[] deducedMines = new int[16];
+    private int deducedMineCount = 0;
+
+    // Scratch buffers for building components, stamped instead of cleared
+    private int[] visitStamp = new int[0];
+    private int stamp = 0;
+
+    // Fields of the component last walked by walkComponent
+    private int[] componentVariables = new int[16];
+    private int componentVariableCount = 0;
+    private int[] componentConstraints = new int[16];
+    private int componentConstraintCount = 0;
+
+    // Scratch buffers for the neighborhood of one number field
+    private final int[] neighborsA = new int[8];
+    private final int[] neighborsB = new int[8];
+
+    /**
+     * @param game the game to solve. The solver only reads it.
+     */
+    public MinesweeperSolver(MinesweeperModel game) {
+        this(game, true);
+    }
+
+    /**
+     * @param game the game to solve. The solver only reads it.
+     * @param parallel false to enumerate on the calling thread, for callers that already keep
+     * every core busy
+     */
+    public MinesweeperSolver(MinesweeperModel game, boolean parallel) {
+        this.game = game;
+        this.parallel = parallel;
+    }
+
+    //******************* Results ****************************
+
+    /**
+     * Catches up with the game and deduces every safe field and mine it can
+     */
+    public void update() {
+        // An undo or redo forgets fields, so the deductions are rebuilt after one
+        boolean sameGame = game.getGameCount() == lastGameCount && game.getUndoCount() == lastUndoCount
+                && game.getGameBoardWidth() == width && game.getGameBoardHeight() == height;
+        if (sameGame && game.getMoveCount() == lastMoveCount + 1) {
+            applyChangedCells();
+        } else if (!sameGame || game.getMoveCount() != lastMoveCount) {
+            // Missed moves or a new game, the changed fields of the last move are not enough
+            rebuild();
+        }
+        lastGameCount = game.getGameCount();
+        lastMoveCount = game.getMoveCount();
+        lastUndoCount = game.getUndoCount();
+
+        oversizedComponentCount = 0;
+        if (game.isLost() || game.isWon()) {
+            return;
+        }
+
+        propagate();
+        while (true) {
+            dirtyComponentsOverMineLimit();
+            if (dirtyVariableCount == 0 || !enumerateDirtyComponents()) {
+                break;
+            }
+            propagate();
+        }
+    }
+
+    /**
+     * @return row-major indices of the unrevealed fields proven to be safe: every such field
+     * if isComplete is true, otherwise every one outside the components too large to enumerate
+     */
+    public int[] getSafeCells() {
+        int[] cells = new int[deducedSafeCount];
+        int count = 0;
+        for (int i = 0; i < deducedSafeCount; i++) {
+            if (content(deducedSafe[i]) == MinesweeperModel.UNREVEALED) {
+                cells[count++] = deducedSafe[i];
+            }
+        }
+        return Arrays.copyOf(cells, count);
+    }
+
+    /**
+     * @return row-major indices of the unflagged fields proven to be mines: every such field
+     * if isComplete is true, otherwise every one outside the components too large to enumerate
+     */
+    public int[] getMineCells() {
+        int[] cells = new int[deducedMineCount];
+        int count = 0;
+        for (int i = 0; i < deducedMineCount; i++) {
+            if (content(deducedMines[i]) == MinesweeperModel.UNREVEALED) {
+                cells[count++] = deducedMines[i];
+            }
+        }
+        return Arrays.copyOf(cells, count);
+    }
+
+    /**
+     * @return true if the last update enumerated every component, so the safe fields and
+     * mines found are all the provable ones
+     */
+    public boolean isComplete() {
+        return oversizedComponentCount == 0;
+    }
+
+    public MinesweeperModel getGame() {
+        return game;
+    }
+
+    /**
+     * @param cell row-major index of a field
+     * @return true if the field is flagged or proven to be a mine
+     */
+    public boolean isKnownMine(int cell) {
+        return known[cell] == KNOWN_MINE;
+    }
+
+    /**
+     * @param cell row-major index of a field
+     * @return true if the field is revealed or proven to be safe
+     */
+    public boolean isKnownSafe(int cell) {
+        return known[cell] == SAFE;
+    }
+
+    /**
+     * @return number of mines not yet flagged or proven
+     */
+    public int getUnknownMineCount() {
+        int knownMines = game.gameBoardCounter(MinesweeperModel.FLAG);
+        for (int i = 0; i < deducedMineCount; i++) {
+            if (content(deducedMines[i]) != MinesweeperModel.FLAG) {
+                knownMines++;
+            }
+        }
+        return game.getNumberOfMines() - knownMines;
+    }
+
+    /**
+     * Like getSafeCells, without allocating
+     *
+     * @return row-major index of an unrevealed field proven to be safe, or -1 if there is none
+     */
+    public int findSafeCell() {
+        for (int i = deducedSafeCount - 1; i >= 0; i--) {
+            if (content(deducedSafe[i]) == MinesweeperModel.UNREVEALED) {
+                return deducedSafe[i];
+            }
+        }
+        return -1;
+    }
+
+    //******************* Keeping up with the game ****************************
+
+    /**
+     * Forgets everything and re-reads the whole board
+     */
+    private void rebuild() {
+        width = game.getGameBoardWidth();
+        height = game.getGameBoardHeight();
+        int numberOfCells = width * height;
+        if (known.length != numberOfCells) {
+            known = new byte[numberOfCells];
+            pending = new int[numberOfCells];
+            isPending = new boolean[numberOfCells];
+            dirtyVariables = new int[numberOfCells];
+            isDirtyVariable = new boolean[numberOfCells];
+            visitStamp = new int[numberOfCells];
+        } else {
+            Arrays.fill(known, UNKNOWN);
+            Arrays.fill(isPending, false);
+            Arrays.fill(isDirtyVariable, false);
+        }
+        pendingCount = 0;
+        dirtyVariableCount = 0;
+        deducedSafeCount = 0;
+        deducedMineCount = 0;
+        enumeratedMineLimit = 0;
+        rebuildCount++;
+
+        for (int cell = 0; cell < numberOfCells; cell++) {
+            readCell(cell);
+        }
+    }
+
+    /**
+     * Reads the fields changed by the game's last touch
+     */
+    private void applyChangedCells() {
+        int[] changedCells = game.getChangedCells();
+        for (int i = 0; i < game.getChangedCellCount(); i++) {
+            readCell(changedCells[i]);
+        }
+    }
+
+    /**
+     * Records what the player can see in the given field and queues the number fields whose
+     * constraints it affects
+     */
+    private void readCell(int cell) {
+        short content = content(cell);
+        if (content == MinesweeperModel.EMPTY || content == MinesweeperModel.NUMBER) {
+            known[cell] = SAFE;
+        } else if (content == MinesweeperModel.FLAG) {
+            known[cell] = KNOWN_MINE;
+        } else {
+            return;
+        }
+        touchNeighborhood(cell);
+    }
+
+    /**
+     * Queues the given field and its neighbors if they are number fields, and marks the
+     * unrevealed fields around them for enumeration
+     */
+    private void touchNeighborhood(int cell) {
+        int x = cell % width;
+        int y = cell / width;
+        for (int row = Math.max(0, y - 1); row <= Math.min(height - 1, y + 1); row++) {
+            for (int col = Math.max(0, x - 1); col <= Math.min(width - 1, x + 1); col++) {
+                int neighbor = row * width + col;
+                if (content(neighbor) == MinesweeperModel.NUMBER) {
+                    if (!isPending[neighbor]) {
+                        isPending[neighbor] = true;
+                        pending[pendingCount++] = neighbor;
+                    }
+                } else if (isVariable(neighbor) && !isDirtyVariable[neighbor]) {
+                    isDirtyVariable[neighbor] = true;
+                    dirtyVariables[dirtyVariableCount++] = neighbor;
+                }
+            }
+        }
+    }
+
+    //******************* Local rules ****************************
+
+    /**
+     * Applies the single-field and subset rules to queued number fields until nothing new
+     * is found
+     */
+    private void propagate() {
+        while (pendingCount > 0) {
+            int cell = pending[--pendingCount];
+            isPending[cell] = false;
+
+            int unknownCount = unknownNeighbors(cell, neighborsA);
+            if (unknownCount == 0) {
+                continue;
+            }
+            // Its constraint changed, so the component around it has to be enumerated again
+            markDirty(neighborsA, unknownCount);
+            int missing = missingMines(cell);
+            if (missing == 0) {
+                markAll(neighborsA, unknownCount, SAFE);
+            } else if (missing == unknownCount) {
+                markAll(neighborsA, unknownCount, KNOWN_MINE);
+            } else {
+                applySubsetRule(cell, unknownCount, missing);
+            }
+        }
+    }
+
+    /**
+     * Compares the given number field with every number field sharing one of its unknown
+     * neighbors. If its unknown neighbors are a subset of the other field's, the other
+     * field's remaining neighbors hold exactly the difference in missing mines.
+     */
+    private void applySubsetRule(int cell, int unknownCount, int missing) {
+        int x = cell % width;
+        int y = cell / width;
+        for (int row = Math.max(0, y - 2); row <= Math.min(height - 1, y + 2); row++) {
+            for (int col = Math.max(0, x - 2); col <= Math.min(width - 1, x + 2); col++) {
+                int other = row * width + col;
+                if (other == cell || content(other) != MinesweeperModel.NUMBER) {
+                    continue;
+                }
+                int otherUnknownCount = unknownNeighbors(other, neighborsB);
+                if (otherUnknownCount == unknownCount || otherUnknownCount == 0) {
+                    continue;
+                }
+                // Either field may be the subset, since only one of them may have changed
+                boolean otherIsLarger = otherUnknownCount > unknownCount;
+                if (otherIsLarger ? !isSubset(neighborsA, unknownCount, neighborsB, otherUnknownCount)
+                        : !isSubset(neighborsB, otherUnknownCount, neighborsA, unknownCount)) {
+                    continue;
+                }
+
+                int difference = Math.abs(missingMines(other) - missing);
+                int remaining = Math.abs(otherUnknownCount - unknownCount);
+                if (difference == 0 || difference == remaining) {
+                    byte value = difference == 0 ? SAFE : KNOWN_MINE;
+                    if (otherIsLarger) {
+                        for (int i = 0; i < otherUnknownCount; i++) {
+                            if (!contains(neighborsA, unknownCount, neighborsB[i])) {
+                                mark(neighborsB[i], value);
+                            }
+                        }
+                    } else {
+                        for (int i = 0; i < unknownCount; i++) {
+                            if (!contains(neighborsB, otherUnknownCount, neighborsA[i])) {
+                                mark(neighborsA[i], value);
+                            }
+                        }
+                    }
+                    // The neighborhood of this field may have changed too, so look at it again
+                    if (!isPending[cell]) {
+                        isPending[cell] = true;
+                        pending[pendingCount++] = cell;
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the neighbors of the given field the solver knows nothing about
+     *
+     * @return number of neighbors collected
+     */
+    private int unknownNeighbors(int cell, int[] out) {
+        int x = cell % width;
+        int y = cell / width;
+        int count = 0;
+        for (int row = Math.max(0, y - 1); row <= Math.min(height - 1, y + 1); row++) {
+            for (int col = Math.max(0, x - 1); col <= Math.min(width - 1, x + 1); col++) {
+                int neighbor = row * width + col;
+                if (isVariable(neighbor)) {
+                    out[count++] = neighbor;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return number of mines around the given number field not yet flagged or proven
+     */
+    private int missingMines(int cell) {
+        int x = cell % width;
+        int y = cell / width;
+        int missing = game.numberOfMinesNearby(x, y);
+        for (int row = Math.max(0, y - 1); row <= Math.min(height - 1, y + 1); row++) {
+            for (int col = Math.max(0, x - 1); col <= Math.min(width - 1, x + 1); col++) {
+                if (known[row * width + col] == KNOWN_MINE) {
+                    missing--;
+                }
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Marks unknown fields for enumeration
+     */
+    private void markDirty(int[] cells, int count) {
+        for (int i = 0; i < count; i++) {
+            if (!isDirtyVariable[cells[i]]) {
+                isDirtyVariable[cells[i]] = true;
+                dirtyVariables[dirtyVariableCount++] = cells[i];
+            }
+        }
+    }
+
+    private void markAll(int[] cells, int count, byte value) {
+        for (int i = 0; i < count; i++) {
+            mark(cells[i], value);
+        }
+    }
+
+    /**
+     * Records a deduction and queues the number fields it affects
+     */
+    private void mark(int cell, byte value) {
+        if (known[cell] != UNKNOWN) {
+            return;
+        }
+        known[cell] = value;
+        if (value == SAFE) {
+            if (deducedSafeCount == deducedSafe.length) {
+                deducedSafe = Arrays.copyOf(deducedSafe, deducedSafe.length * 2);
+            }
+            deducedSafe[deducedSafeCount++] = cell;
+        } else {
+            if (deducedMineCount == deducedMines.length) {
+                deducedMines = Arrays.copyOf(deducedMines, deducedMines.length * 2);
+            }
+            deducedMines[deducedMineCount++] = cell;
+        }
+        touchNeighborhood(cell);
+    }
+
+    //******************* Enumeration ****************************
+
+    /**
+     * Enumerates every component containing a field that changed since the last enumeration,
+     * in parallel, and records the fields that are safe or a mine in every solution. The fields
+     * of components too large to enumerate stay dirty, and are counted in oversizedComponentCount.
+     *
+     * @return true if anything new was found
+     */
+    private boolean enumerateDirtyComponents() {
+        List<FrontierComponent> components = new ArrayList<FrontierComponent>();
+        List<int[]> oversized = new ArrayList<int[]>();
+        stamp++;
+        for (int i = 0; i < dirtyVariableCount; i++) {
+            int variable = dirtyVariables[i];
+            isDirtyVariable[variable] = false;
+            if (isVariable(variable) && visitStamp[variable] != stamp && isFrontier(variable)) {
+                FrontierComponent component = buildComponent(variable);
+                if (component != null) {
+                    components.add(component);
+                } else {
+                    oversized.add(Arrays.copyOf(componentVariables, componentVariableCount));
+                }
+            }
+        }
+        dirtyVariableCount = 0;
+        enumeratedMineLimit = getUnknownMineCount();
+        oversizedComponentCount = oversized.size();
+        for (int[] variables : oversized) {
+            for (int variable : variables) {
+                isDirtyVariable[variable] = true;
+                dirtyVariables[dirtyVariableCount++] = variable;
+            }
+        }
+        if (components.isEmpty()) {
+            return false;
+        }
+
+        List<FrontierComponent.Result> results;
+        try {
+            results = enumerateAll(components, getUnknownMineCount(), parallel);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        boolean found = false;
+        for (int c = 0; c < components.size(); c++) {
+            FrontierComponent.Result result = results.get(c);
+            long solutions = result.totalSolutions();
+            if (solutions == 0) {
+                continue;
+            }
+            int[] variables = components.get(c).getVariables();
+            for (int v = 0; v < variables.length; v++) {
+                long mineCount = result.totalMineCount(v);
+                if (mineCount == 0) {
+                    mark(variables[v], SAFE);
+                    found = true;
+                } else if (mineCount == solutions) {
+                    mark(variables[v], KNOWN_MINE);
+                    found = true;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Marks every unknown field dirty once fewer mines are left than when the components were
+     * enumerated, if that could rule out solutions of a component small enough to enumerate.
+     * The components are enumerated again under the lower limit, which can prove more fields.
+     */
+    private void dirtyComponentsOverMineLimit() {
+        int mineLimit = getUnknownMineCount();
+        if (mineLimit >= enumeratedMineLimit || mineLimit >= MAX_COMPONENT_VARIABLES) {
+            return;
+        }
+        for (int cell = 0; cell < known.length; cell++) {
+            if (isVariable(cell) && !isDirtyVariable[cell]) {
+                isDirtyVariable[cell] = true;
+                dirtyVariables[dirtyVariableCount++] = cell;
+            }
+        }
+        enumeratedMineLimit = mineLimit;
+    }
+
+    /**
+     * Collects the component containing the given frontier field
+     *
+     * @return the component, or null if it is larger than MAX_COMPONENT_VARIABLES
+     */
+    private FrontierComponent buildComponent(int start) {
+        walkComponent(start);
+        if (componentVariableCount > MAX_COMPONENT_VARIABLES) {
+            return null;
+        }
+
+        int[] targets = new int[componentConstraintCount];
+        for (int i = 0; i < componentConstraintCount; i++) {
+            targets[i] = missingMines(componentConstraints[i]);
+        }
+        return new FrontierComponent(Arrays.copyOf(componentVariables, componentVariableCount),
+                Arrays.copyOf(componentConstraints, componentConstraintCount), targets, width);
+    }
+
+    /**
+     * Stamps the whole component containing the given frontier field, even one too large to
+     * solve, with a breadth-first search alternating between unknown fields and the number
+     * fields next to them, and leaves its fields in componentVariables and componentConstraints
+     */
+    private void walkComponent(int start) {
+        int[] variables = componentVariables;
+        int variableCount = 0;
+        int[] constraints = componentConstraints;
+        int constraintCount = 0;
+
+        visitStamp[start] = stamp;
+        variables[variableCount++] = start;
+        for (int next = 0; next < variableCount; next++) {
+            int variable = variables[next];
+            int x = variable % width;
+            int y = variable / width;
+            for (int row = Math.max(0, y - 1); row <= Math.min(height - 1, y + 1); row++) {
+                for (int col = Math.max(0, x - 1); col <= Math.min(width - 1, x + 1); col++) {
+                    int constraint = row * width + col;
+                    if (content(constraint) != MinesweeperModel.NUMBER || visitStamp[constraint] == stamp) {
+                        continue;
+                    }
+                    visitStamp[constraint] = stamp;
+                    if (constraintCount == constraints.length) {
+                        constraints = Arrays.copyOf(constraints, constraintCount * 2);
+                    }
+                    constraints[constraintCount++] = constraint;
+
+                    int count = unknownNeighbors(constraint, neighborsB);
+                    for (int i = 0; i < count; i++) {
+                        if (visitStamp[neighborsB[i]] != stamp) {
+                            visitStamp[neighborsB[i]] = stamp;
+                            if (variableCount == variables.length) {
+                                variables = Arrays.copyOf(variables, variableCount * 2);
+                            }
+                            variables[variableCount++] = neighborsB[i];
+                        }
+                    }
+                }
+            }
+        }
+        // The buffers may have grown
+        componentVariables = variables;
+        componentVariableCount = variableCount;
+        componentConstraints = constraints;
+        componentConstraintCount = constraintCount;
+    }
+
+    /**
+     * Collects the frontier components containing any of the given fields, each only once.
+     * Fields that are not unknown frontier fields are skipped. Searches start from the fields
+     * in the given order, so ascending fields always build an unchanged component the same way.
+     *
+     * @param cells row-major indices of the fields to start from
+     * @param count number of fields in cells
+     * @param oversized receives the variables of every component larger than
+     * MAX_COMPONENT_VARIABLES, which is not built
+     * @return the components no larger than MAX_COMPONENT_VARIABLES
+     */
+    List<FrontierComponent> collectComponents(int[] cells, int count, List<int[]> oversized) {
+        List<FrontierComponent> components = new ArrayList<FrontierComponent>();
+        stamp++;
+        for (int i = 0; i < count; i++) {
+            int cell = cells[i];
+            if (visitStamp[cell] == stamp || !isVariable(cell) || !isFrontier(cell)) {
+                continue;
+            }
+            FrontierComponent component = buildComponent(cell);
+            if (component != null) {
+                components.add(component);
+            } else {
+                oversized.add(Arrays.copyOf(componentVariables, componentVariableCount));
+            }
+        }
+        return components;
+    }
+
+    /**
+     * @return number of times the solver re-read the whole board. The deduction lists start
+     * over each time.
+     */
+    int getRebuildCount() {
+        return rebuildCount;
+    }
+
+    /**
+     * @return number of fields deduced safe since the last rebuild, revealed or not
+     */
+    int getDeducedSafeCount() {
+        return deducedSafeCount;
+    }
+
+    /**
+     * @param i index in the order the fields were deduced
+     * @return row-major index of a field deduced safe
+     */
+    int getDeducedSafe(int i) {
+        return deducedSafe[i];
+    }
+
+    /**
+     * @return number of fields deduced to be mines since the last rebuild, flagged or not
+     */
+    int getDeducedMineCount() {
+        return deducedMineCount;
+    }
+
+    /**
+     * @param i index in the order the fields were deduced
+     * @return row-major index of a field deduced to be a mine
+     */
+    int getDeducedMine(int i) {
+        return deducedMines[i];
+    }
+
+    /**
+     * Enumerates the components in parallel on the shared pool, or on the calling thread if
+     * there is only one or parallel is false
+     *
+     * @param components the components to enumerate
+     * @param maxMines largest number of mines any component may hold
+     * @param parallel false to enumerate every component on the calling thread
+     * @return the result of each component, in the same order
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    static List<FrontierComponent.Result> enumerateAll(List<FrontierComponent> components, final int maxMines,
+                                                       boolean parallel) throws InterruptedException {
+        List<FrontierComponent.Result> results = new ArrayList<FrontierComponent.Result>();
+        if (components.size() == 1 || !parallel) {
+            for (FrontierComponent component : components) {
+                results.add(component.enumerate(maxMines));
+            }
+            return results;
+        }
+
+        List<Future<FrontierComponent.Result>> futures = new ArrayList<Future<FrontierComponent.Result>>();
+        for (final FrontierComponent component : components) {
+            futures.add(getEnumerationPool().submit(new Callable<FrontierComponent.Result>() {
+                @Override
+                public FrontierComponent.Result call() {
+                    return component.enumerate(maxMines);
+                }
+            }));
+        }
+        try {
+            for (Future<FrontierComponent.Result> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<FrontierComponent.Result> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private static synchronized ExecutorService getEnumerationPool() {
+        if (enumerationPool == null) {
+            enumerationPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "minesweeper-solver");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return enumerationPool;
+    }
+
+    //******************* Helpers ****************************
+
+    private short content(int cell) {
+        return game.getFieldContent(cell % width, cell / width);
+    }
+
+    /**
+     * @return true if the field is unrevealed, unflagged and not yet deduced
+     */
+    private boolean isVariable(int cell) {
+        return known[cell] == UNKNOWN && content(cell) == MinesweeperModel.UNREVEALED;
+    }
+
+    /**
+     * @return true if the field is next to a revealed number field
+     */
+    private boolean isFrontier(int cell) {
+        int x = cell % width;
+        int y = cell / width;
+        for (int row = Math.max(0, y - 1); row <= Math.min(height - 1, y + 1); row++) {
+            for (int col = Math.max(0, x - 1); col <= Math.min(width - 1, x + 1); col++) {
+                if (content(row * width + col) == MinesweeperModel.NUMBER) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(int[] cells, int count, int cell) {
+        for (int i = 0; i < count; i++) {
+            if (cells[i] == cell) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSubset(int[] small, int smallCount, int[] large, int largeCount) {
+        for (int i = 0; i < smallCount; i++) {
+            if (!contains(large, largeCount, small[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,318 @@
+package hu.ait.android.minesweeper.model;
+
+import java.util.Arrays;
+
+/**
+ * Append-only record of the moves of one game, enough to replay it exactly with MoveReplayer.
+ *
+ * The journal holds the board size, number of mines, the layout seed and the field the mines
+ * were generated around, then every call to
+ * onTouchHandler as varints: the zigzag-encoded column difference to the previous move with
+ * the flag bit below it, the zigzag-encoded row difference, and the milliseconds since the
+ * previous move. Moves near each other a second apart take three or four bytes.
+ *
+ * A journal attached to a game in progress, or to a restored one, starts recording with the
+ * next game. Undoing a move drops it from the journal.
+ */
+public class MoveJournal {
+
+    private int width;
+    private int height;
+    private int mines;
+    private long seed;
+
+    /**
+     * True once the first move of a game has been recorded
+     */
+    private boolean started = false;
+
+    /**
+     * Game count of the recorded game, so moves of another game are never appended
+     */
+    private int gameCount;
+
+    // Field the mines were generated around, and whether its neighbors were kept clear
+    private int layoutX;
+    private int layoutY;
+    private boolean layoutKeepSafe;
+
+    private long startTimeMillis;
+
+    private byte[] buffer = new byte[64];
+    private int length = 0;
+    private int moveCount = 0;
+
+    // Previous move, the base of the next move's deltas
+    private int lastX;
+    private int lastY;
+    private long lastTimeMillis;
+
+    /**
+     * Forgets every move and starts recording a new game. Called by the game on its first move.
+     *
+     * @param gameCount game count of the game
+     * @param width number of fields wide the game board is
+     * @param height number of fields tall the game board is
+     * @param mines number of mines in the game
+     * @param seed seed the mines were generated from
+     * @param layoutX column of the field the mines were generated around
+     * @param layoutY row of the field the mines were generated around
+     * @param layoutKeepSafe true if the mines were kept away from that field
+     * @param timeMillis time of the first move in milliseconds
+     */
+    void begin(int gameCount, int width, int height, int mines, long seed, int layoutX, int layoutY,
+               boolean layoutKeepSafe, long timeMillis) {
+        this.gameCount = gameCount;
+        this.width = width;
+        this.height = height;
+        this.mines = mines;
+        this.seed = seed;
+        this.layoutX = layoutX;
+        this.layoutY = layoutY;
+        this.layoutKeepSafe = layoutKeepSafe;
+        started = true;
+        startTimeMillis = timeMillis;
+        length = 0;
+        moveCount = 0;
+        lastX = 0;
+        lastY = 0;
+        lastTimeMillis = timeMillis;
+    }
+
+    /**
+     * Appends a move, unless it is not the next move of the recorded game
+     *
+     * @param gameCount game count of the game
+     * @param moveNumber number of the move in its game, starting at 1
+     * @param x column of the field touched
+     * @param y row of the field touched
+     * @param placeFlag true if the move placed or removed a flag
+     * @param timeMillis time of the move in milliseconds
+     */
+    void record(int gameCount, int moveNumber, int x, int y, boolean placeFlag, long timeMillis) {
+        if (!started || gameCount != this.gameCount || moveNumber != moveCount + 1) {
+            return;
+        }
+        // Three varints of at most five bytes each
+        if (length + 15 > buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        writeVarint((zigzag(x - lastX) << 1) | (placeFlag ? 1 : 0));
+        writeVarint(zigzag(y - lastY));
+        writeVarint((int) Math.min(Integer.MAX_VALUE, Math.max(0, timeMillis - lastTimeMillis)));
+        lastX = x;
+        lastY = y;
+        lastTimeMillis = timeMillis;
+        moveCount++;
+    }
+
+    /**
+     * Drops the moves after the given one, when they are undone. Takes time proportional to
+     * the moves kept, since the varints can only be decoded from the start.
+     *
+     * @param gameCount game count of the game
+     * @param moves number of moves to keep
+     */
+    void truncate(int gameCount, int moves) {
+        if (!started || gameCount != this.gameCount || moves >= moveCount) {
+            return;
+        }
+        Reader reader = new Reader();
+        long timeMillis = startTimeMillis;
+        while (reader.getMovesRead() < moves) {
+            reader.next();
+            timeMillis += reader.getTimeDeltaMillis();
+        }
+        length = reader.position;
+        moveCount = moves;
+        lastX = reader.getX();
+        lastY = reader.getY();
+        lastTimeMillis = timeMillis;
+    }
+
+    private void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    /**
+     * Goes on recording the journal's game under a new game count, after it was replayed up to
+     * its last move on a restarted game
+     *
+     * @param gameCount game count of the game the moves were replayed on
+     * @param moves number of moves replayed
+     */
+    void resume(int gameCount, int moves) {
+        if (started && moves == moveCount) {
+            this.gameCount = gameCount;
+        }
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * @return a copy that no longer changes when this journal records more moves
+     */
+    public MoveJournal copy() {
+        MoveJournal copy = new MoveJournal();
+        copy.width = width;
+        copy.height = height;
+        copy.mines = mines;
+        copy.seed = seed;
+        copy.started = started;
+        copy.gameCount = gameCount;
+        copy.layoutX = layoutX;
+        copy.layoutY = layoutY;
+        copy.layoutKeepSafe = layoutKeepSafe;
+        copy.startTimeMillis = startTimeMillis;
+        copy.buffer = Arrays.copyOf(buffer, length);
+        copy.length = length;
+        copy.moveCount = moveCount;
+        copy.lastX = lastX;
+        copy.lastY = lastY;
+        copy.lastTimeMillis = lastTimeMillis;
+        return copy;
+    }
+
+    /**
+     * @return true if the journal holds a game that can be replayed
+     */
+    public boolean isStarted() {
+        return started;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMines() {
+        return mines;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return column of the field the mines were generated around
+     */
+    public int getLayoutX() {
+        return layoutX;
+    }
+
+    /**
+     * @return row of the field the mines were generated around
+     */
+    public int getLayoutY() {
+        return layoutY;
+    }
+
+    /**
+     * @return true if the mines were kept away from the field they were generated around
+     */
+    public boolean isLayoutKeepSafe() {
+        return layoutKeepSafe;
+    }
+
+    /**
+     * @return number of moves recorded
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * @return number of bytes the moves take
+     */
+    public int getByteCount() {
+        return length;
+    }
+
+    /**
+     * @return a reader positioned before the first move
+     */
+    public Reader reader() {
+        return new Reader();
+    }
+
+    /**
+     * Decodes the moves of the journal one at a time, without allocating
+     */
+    public class Reader {
+        private int position = 0;
+        private int movesRead = 0;
+        private int x;
+        private int y;
+        private boolean placeFlag;
+        private int timeDeltaMillis;
+
+        /**
+         * Moves to the next move
+         *
+         * @return false if there are no more moves
+         */
+        public boolean next() {
+            if (movesRead == moveCount) {
+                return false;
+            }
+            int first = readVarint();
+            placeFlag = (first & 1) != 0;
+            x += unzigzag(first >>> 1);
+            y += unzigzag(readVarint());
+            timeDeltaMillis = readVarint();
+            movesRead++;
+            return true;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public boolean isPlaceFlag() {
+            return placeFlag;
+        }
+
+        /**
+         * @return milliseconds between the previous move and this one
+         */
+        public int getTimeDeltaMillis() {
+            return timeDeltaMillis;
+        }
+
+        /**
+         * @return number of moves read so far
+         */
+        public int getMovesRead() {
+            return movesRead;
+        }
+    }
+}
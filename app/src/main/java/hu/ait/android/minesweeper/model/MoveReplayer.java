@@ -0,0 +1,93 @@
+package hu.ait.android.minesweeper.model;
+
+/**
+ * Replays the game recorded in a MoveJournal on a game model, either all at once at full
+ * speed or one move at a time. The mines are regenerated from the journal's seed at the
+ * first move, around the field they were generated around, so the replayed game is identical
+ * to the recorded one.
+ *
+ * The replayed moves are not recorded into the game's own journal, so replaying a game from
+ * the journal it was recorded in leaves the journal, and its layout, as it was. Once every
+ * move is replayed, the journal records the moves played on from there.
+ */
+public class MoveReplayer {
+
+    private final MoveJournal journal;
+    private final MinesweeperModel game;
+    private MoveJournal.Reader reader;
+
+    /**
+     * @param journal the recorded game, which may be the journal attached to the game
+     * @param game the game to replay on, which is restarted
+     */
+    public MoveReplayer(MoveJournal journal, MinesweeperModel game) {
+        this.journal = journal;
+        this.game = game;
+    }
+
+    /**
+     * Restarts the game with the recorded board settings, ready for the first move
+     *
+     * @throws IllegalStateException if the journal holds no game
+     */
+    public void start() {
+        if (!journal.isStarted()) {
+            throw new IllegalStateException("The journal holds no game");
+        }
+        if (game.getGameBoardWidth() != journal.getWidth() || game.getGameBoardHeight() != journal.getHeight()
+                || game.getNumberOfMines() != journal.getMines()) {
+            game.setCustomGameBoard(journal.getWidth(), journal.getHeight(), journal.getMines());
+        }
+        game.restartGame();
+        game.beginReplay();
+        reader = journal.reader();
+    }
+
+    /**
+     * Applies the next recorded move
+     *
+     * @return false if every move has been replayed
+     */
+    public boolean step() {
+        if (reader == null) {
+            start();
+        }
+        if (!reader.next()) {
+            game.endReplay(journal);
+            return false;
+        }
+        if (reader.getMovesRead() == 1) {
+            game.generateMines(journal.getLayoutX(), journal.getLayoutY(), journal.isLayoutKeepSafe(),
+                    journal.getSeed());
+        }
+        game.onTouchHandler(reader.getX(), reader.getY(), reader.isPlaceFlag());
+        return true;
+    }
+
+    /**
+     * Replays every remaining move, without any pause between them
+     *
+     * @return number of moves replayed
+     */
+    public int runToEnd() {
+        int count = 0;
+        while (step()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of moves replayed so far
+     */
+    public int getPosition() {
+        return reader == null ? 0 : reader.getMovesRead();
+    }
+
+    /**
+     * @return true if every move has been replayed
+     */
+    public boolean isFinished() {
+        return reader != null && reader.getMovesRead() == journal.getMoveCount();
+    }
+}
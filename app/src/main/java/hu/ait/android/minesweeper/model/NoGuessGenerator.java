@@ -0,0 +1,124 @@
+package hu.ait.android.minesweeper.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Finds mine layouts that can be cleared from the first reveal without guessing.
+ *
+ * A candidate is the layout the ordinary generator makes from a seed. Every core tries its
+ * own stream of seeds, playing each candidate with the solver until the board is clear or the
+ * solver is stuck. The first seed that clears wins and the other searches are cancelled.
+ */
+public class NoGuessGenerator {
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Shared pool for the searches, one daemon thread per core
+     */
+    private static ExecutorService searchPool;
+
+    private NoGuessGenerator() {
+    }
+
+    /**
+     * Searches for the seed of a layout that can be cleared without guessing
+     *
+     * @param width number of fields wide the game board is
+     * @param height number of fields tall the game board is
+     * @param mines number of mines in the game
+     * @param safeX X coordinate of the first reveal
+     * @param safeY Y coordinate of the first reveal
+     * @param timeoutMillis longest time to search
+     * @return seed to pass to MinesweeperModel.generateMines
+     * @throws TimeoutException if no such layout was found in time
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public static long findSeed(final int width, final int height, final int mines, final int safeX,
+                                final int safeY, long timeoutMillis) throws TimeoutException, InterruptedException {
+        int searchCount = Runtime.getRuntime().availableProcessors();
+        final Random seeds = new Random();
+        List<Callable<Long>> searches = new ArrayList<Callable<Long>>(searchCount);
+        for (int i = 0; i < searchCount; i++) {
+            final long streamSeed = seeds.nextLong();
+            searches.add(new Callable<Long>() {
+                @Override
+                public Long call() throws InterruptedException {
+                    Random candidates = new Random(streamSeed);
+                    while (!Thread.currentThread().isInterrupted()) {
+                        long seed = candidates.nextLong();
+                        if (isSolvable(width, height, mines, safeX, safeY, seed)) {
+                            return seed;
+                        }
+                    }
+                    throw new InterruptedException();
+                }
+            });
+        }
+
+        try {
+            return getSearchPool().invokeAny(searches, timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // Every search failed, which only happens when they are all interrupted
+            throw new TimeoutException("No solvable layout found");
+        }
+    }
+
+    /**
+     * Plays the layout of the given seed using only moves the solver proves safe
+     *
+     * @return true if every safe field gets revealed
+     */
+    public static boolean isSolvable(int width, int height, int mines, int safeX, int safeY, long seed) {
+        MinesweeperModel game = new MinesweeperModel(width, height, mines);
+        game.generateMines(safeX, safeY, true, seed);
+        game.onTouchHandler(safeX, safeY, false);
+
+        // The searches already keep every core busy
+        MinesweeperSolver solver = new MinesweeperSolver(game, false);
+        int safeFieldCount = width * height - mines;
+        while (game.getRevealedCount() < safeFieldCount) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            solver.update();
+            int[] safeCells = solver.getSafeCells();
+            if (safeCells.length == 0) {
+                return false;
+            }
+            for (int cell : safeCells) {
+                if (game.getFieldContent(cell % width, cell / width) == MinesweeperModel.UNREVEALED) {
+                    game.onTouchHandler(cell % width, cell / width, false);
+                    // Keep the solver one move behind, so it can follow the changed fields
+                    solver.update();
+                }
+            }
+        }
+        return true;
+    }
+
+    private static synchronized ExecutorService getSearchPool() {
+        if (searchPool == null) {
+            searchPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "minesweeper-no-guess");
+                            thread.setDaemon(true);
+                            thread.setPriority(Thread.MIN_PRIORITY);
+                            return thread;
+                        }
+                    });
+        }
+        return searchPool;
+    }
+}
@@ -0,0 +1,275 @@
+package hu.ait.android.minesweeper.model;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Layouts that can be cleared without guessing, searched for ahead of time so the first tap
+ * of a no-guess game only has to look one up instead of searching on the UI thread. A tap on
+ * a field no kept layout covers gets a random layout, which may need a guess.
+ *
+ * A layout is solvable from its first reveal, and then from a tap on any empty field of the
+ * opening that reveal makes, since those taps reveal the same opening. Each layout keeps the
+ * fields of its opening, and a low-priority worker thread searches for new layouts opened
+ * from fields no kept layout covers, until every field is covered or MAX_LAYOUTS are kept.
+ * Taking a layout removes it, so no board is dealt twice, and the worker replaces it.
+ *
+ * All methods are thread-safe.
+ */
+public class NoGuessLayouts {
+
+    /**
+     * Most layouts kept, however many fields are left uncovered
+     */
+    public static final int MAX_LAYOUTS = 128;
+
+    /**
+     * A layout and the field its mines were generated around
+     */
+    static class Layout {
+        final long seed;
+        final int safeX;
+        final int safeY;
+
+        /**
+         * Row-major indices of the field of the first reveal and of the empty fields of its
+         * opening, the fields a first tap gets this layout on
+         */
+        final int[] openingCells;
+
+        Layout(long seed, int safeX, int safeY, int[] openingCells) {
+            this.seed = seed;
+            this.safeX = safeX;
+            this.safeY = safeY;
+            this.openingCells = openingCells;
+        }
+    }
+
+    // Board parameters the layouts are searched for
+    private int width;
+    private int height;
+    private int mines;
+
+    /**
+     * False while no no-guess game is being played, so the worker rests
+     */
+    private volatile boolean active = false;
+
+    /**
+     * Incremented on every change of parameters, so a search for earlier ones is dropped
+     */
+    private volatile int generation = 0;
+
+    private final ArrayList<Layout> layouts = new ArrayList<Layout>();
+
+    /**
+     * Number of kept layouts whose opening holds each field
+     */
+    private int[] coverCounts = new int[0];
+
+    private Thread worker;
+
+    /**
+     * Sets the board parameters to search layouts for and starts searching. If they changed,
+     * the layouts kept for the previous ones are dropped.
+     *
+     * @param width number of fields wide the game board is
+     * @param height number of fields tall the game board is
+     * @param mines number of mines in the game
+     */
+    public synchronized void configure(int width, int height, int mines) {
+        active = true;
+        if (width != this.width || height != this.height || mines != this.mines) {
+            this.width = width;
+            this.height = height;
+            this.mines = mines;
+            generation++;
+            layouts.clear();
+            coverCounts = new int[width * height];
+        }
+
+        if (worker == null) {
+            worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    search();
+                }
+            }, "minesweeper-no-guess-layouts");
+            worker.setDaemon(true);
+            worker.setPriority(Thread.MIN_PRIORITY);
+            worker.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Stops searching for more layouts, keeping the ones found
+     */
+    public synchronized void pause() {
+        active = false;
+    }
+
+    /**
+     * Stops the worker thread, for when the app is closed. The layouts found are kept, and
+     * the next call to configure starts a new worker.
+     */
+    public synchronized void shutdown() {
+        active = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+    }
+
+    /**
+     * Takes a layout that can be cleared from a tap on the given field, without waiting
+     *
+     * @return the layout, or null if none is kept for the field and parameters
+     */
+    synchronized Layout take(int width, int height, int mines, int x, int y) {
+        if (width != this.width || height != this.height || mines != this.mines) {
+            return null;
+        }
+        int cell = y * width + x;
+        if (coverCounts[cell] == 0) {
+            return null;
+        }
+        for (int i = 0; i < layouts.size(); i++) {
+            Layout layout = layouts.get(i);
+            if (contains(layout.openingCells, cell)) {
+                layouts.remove(i);
+                for (int openingCell : layout.openingCells) {
+                    coverCounts[openingCell]--;
+                }
+                notifyAll();
+                return layout;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of layouts ready to be taken
+     */
+    public synchronized int getReadyCount() {
+        return layouts.size();
+    }
+
+    /**
+     * @return number of fields a first tap on finds a layout for
+     */
+    public synchronized int getCoveredCount() {
+        int covered = 0;
+        for (int count : coverCounts) {
+            if (count > 0) {
+                covered++;
+            }
+        }
+        return covered;
+    }
+
+    private static boolean contains(int[] cells, int cell) {
+        for (int c : cells) {
+            if (c == cell) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Worker loop: waits until a field is left uncovered, then searches a layout opened from
+     * it outside the lock
+     */
+    private void search() {
+        Random random = new Random();
+        Thread thread = Thread.currentThread();
+        while (!thread.isInterrupted()) {
+            int searchGeneration;
+            int searchWidth;
+            int searchHeight;
+            int searchMines;
+            int safeCell;
+            synchronized (this) {
+                while ((safeCell = pickUncovered(random)) < 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                searchGeneration = generation;
+                searchWidth = width;
+                searchHeight = height;
+                searchMines = mines;
+            }
+
+            int safeX = safeCell % searchWidth;
+            int safeY = safeCell / searchWidth;
+            long seed = random.nextLong();
+            while (searchGeneration == generation && active && !thread.isInterrupted()
+                    && !NoGuessGenerator.isSolvable(searchWidth, searchHeight, searchMines, safeX, safeY, seed)) {
+                seed = random.nextLong();
+            }
+            if (searchGeneration != generation || !active) {
+                continue;
+            }
+            int[] openingCells = openingOf(searchWidth, searchHeight, searchMines, safeX, safeY, seed);
+
+            synchronized (this) {
+                if (searchGeneration == generation && layouts.size() < MAX_LAYOUTS) {
+                    layouts.add(new Layout(seed, safeX, safeY, openingCells));
+                    for (int openingCell : openingCells) {
+                        coverCounts[openingCell]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a random field no kept layout covers, or -1 if there is nothing to search for
+     */
+    private int pickUncovered(Random random) {
+        if (!active || layouts.size() >= MAX_LAYOUTS) {
+            return -1;
+        }
+        int uncovered = 0;
+        for (int count : coverCounts) {
+            if (count == 0) {
+                uncovered++;
+            }
+        }
+        if (uncovered == 0) {
+            return -1;
+        }
+        int pick = random.nextInt(uncovered);
+        for (int cell = 0; cell < coverCounts.length; cell++) {
+            if (coverCounts[cell] == 0 && pick-- == 0) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the field of the first reveal of the layout and the empty fields it reveals
+     */
+    private static int[] openingOf(int width, int height, int mines, int safeX, int safeY, long seed) {
+        MinesweeperModel game = new MinesweeperModel(width, height, mines);
+        game.generateMines(safeX, safeY, true, seed);
+        game.onTouchHandler(safeX, safeY, false);
+        int[] changedCells = game.getChangedCells();
+        int count = 0;
+        int[] openingCells = new int[game.getChangedCellCount()];
+        for (int i = 0; i < game.getChangedCellCount(); i++) {
+            // The touched field comes first, and is a number only on boards too crowded to open
+            if (i == 0 || game.getFieldContent(changedCells[i]) == MinesweeperModel.EMPTY) {
+                openingCells[count++] = changedCells[i];
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(openingCells, 0, result, 0, count);
+        return result;
+    }
+}
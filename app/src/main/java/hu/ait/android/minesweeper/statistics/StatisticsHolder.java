@@ -0,0 +1,52 @@
+package hu.ait.android.minesweeper.statistics;
+
+import java.io.File;
+import java.io.IOException;
+
+import hu.ait.android.minesweeper.model.MinesweeperModel;
+
+/**
+ * Holds the statistics store of the activities, opened on first use. Like GameHolder, it may
+ * only be used from the UI thread.
+ */
+public class StatisticsHolder {
+
+    private static StatisticsStore store = null;
+
+    /**
+     * Game count of the last game recorded, so a game is never recorded twice
+     */
+    private static int recordedGameCount = -1;
+
+    private StatisticsHolder() {
+    }
+
+    /**
+     * @param directory where the store keeps its files, the app's private storage
+     * @return the store
+     * @throws IOException if the store cannot be opened
+     */
+    public static StatisticsStore getStore(File directory) throws IOException {
+        if (store == null) {
+            store = StatisticsStore.open(directory);
+        }
+        return store;
+    }
+
+    /**
+     * Records the game if it is over and has not been recorded yet
+     *
+     * @param game the game played in the activities
+     * @param directory where the store keeps its files
+     * @throws IOException if the game cannot be recorded
+     */
+    public static void recordIfFinished(MinesweeperModel game, File directory) throws IOException {
+        boolean won = game.isWon();
+        if ((!won && !game.isLost()) || game.getGameCount() == recordedGameCount) {
+            return;
+        }
+        recordedGameCount = game.getGameCount();
+        getStore(directory).record(game.getDifficulty(), won, game.getElapsedMillis(), game.getMoveCount(),
+                game.getRevealedCount());
+    }
+}
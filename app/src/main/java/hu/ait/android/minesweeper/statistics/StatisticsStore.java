@@ -0,0 +1,421 @@
+package hu.ait.android.minesweeper.statistics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local history of every finished game, kept in two files in a directory:
+ *
+ * games.log   - append-only log of fixed-size records: difficulty, outcome, time in
+ *               milliseconds, clicks and fields revealed
+ * games.index - per-difficulty aggregates and the TOP_K best winning times, with the number
+ *               of log records they cover
+ *
+ * Recording a game appends its record and rewrites the small, fixed-size index, so opening the
+ * store only reads the index, plus any records a crash kept out of it. The log is only
+ * scanned from the start when the index is missing or unreadable.
+ *
+ * Concurrency: not thread-safe, use it from the UI thread. Only the 16-byte log append happens
+ * on the calling thread; the index is written from a snapshot of its bytes on a background
+ * thread, one write at a time and in order, so the newest snapshot is the one left on disk.
+ * An index write that never completes only costs the next open a scan of the records after it.
+ */
+public class StatisticsStore {
+
+    /**
+     * Difficulty levels, numbered as in MinesweeperModel.setGameDifficulty, with 0 for custom boards
+     */
+    public static final int DIFFICULTIES = 5;
+
+    /**
+     * Number of best times kept per difficulty
+     */
+    public static final int TOP_K = 10;
+
+    static final String LOG_FILE = "games.log";
+    static final String INDEX_FILE = "games.index";
+
+    /**
+     * "MSGL" and "MSGI"
+     */
+    private static final int LOG_MAGIC = 0x4D53474C;
+    private static final int INDEX_MAGIC = 0x4D534749;
+    private static final short VERSION = 1;
+
+    private static final int LOG_HEADER_BYTES = 4 + 2;
+    private static final int RECORD_BYTES = 1 + 1 + 2 + 4 * 3;
+
+    private static final int AGGREGATE_BYTES = 4 * 2 + 8 * 3 + 4 + 4 * TOP_K;
+    private static final int INDEX_BYTES = 4 + 2 + 8 + DIFFICULTIES * AGGREGATE_BYTES;
+
+    // Record outcomes
+    private static final int OUTCOME_LOST = 0;
+    private static final int OUTCOME_WON = 1;
+
+    /**
+     * Records read when the log has to be scanned
+     */
+    private static final int SCAN_RECORDS = 4096;
+
+    /**
+     * Longest close waits for the pending index writes
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+    private final File directory;
+    private final RandomAccessFile log;
+
+    /**
+     * Number of records in the log, all of them covered by the aggregates
+     */
+    private long recordCount = 0;
+
+    private final Aggregate[] aggregates = new Aggregate[DIFFICULTIES];
+
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_BYTES);
+    private final ByteBuffer indexBuffer = ByteBuffer.allocate(INDEX_BYTES);
+
+    /**
+     * Writes the index snapshots, off the calling thread
+     */
+    private final ExecutorService indexWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "minesweeper-statistics-index");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Totals of the games of one difficulty
+     */
+    public static class Aggregate {
+        private int gamesPlayed;
+        private int gamesWon;
+        private long totalWinMillis;
+        private long totalClicks;
+        private long totalFieldsRevealed;
+
+        /**
+         * Best winning times in ascending order, the first bestCount are valid
+         */
+        private final int[] bestTimes = new int[TOP_K];
+        private int bestCount;
+
+        private void add(boolean won, int timeMillis, int clicks, int fieldsRevealed) {
+            gamesPlayed++;
+            totalClicks += clicks;
+            totalFieldsRevealed += fieldsRevealed;
+            if (!won) {
+                return;
+            }
+            gamesWon++;
+            totalWinMillis += timeMillis;
+            if (bestCount == TOP_K && timeMillis >= bestTimes[TOP_K - 1]) {
+                return;
+            }
+            // Insertion into the short sorted array
+            int i = bestCount < TOP_K ? bestCount++ : TOP_K - 1;
+            while (i > 0 && bestTimes[i - 1] > timeMillis) {
+                bestTimes[i] = bestTimes[i - 1];
+                i--;
+            }
+            bestTimes[i] = timeMillis;
+        }
+
+        public int getGamesPlayed() {
+            return gamesPlayed;
+        }
+
+        public int getGamesWon() {
+            return gamesWon;
+        }
+
+        /**
+         * @return average time of the games won in milliseconds, or 0 if none was won
+         */
+        public long getAverageWinMillis() {
+            return gamesWon == 0 ? 0 : totalWinMillis / gamesWon;
+        }
+
+        public long getTotalClicks() {
+            return totalClicks;
+        }
+
+        public long getTotalFieldsRevealed() {
+            return totalFieldsRevealed;
+        }
+
+        /**
+         * @return the best winning times in milliseconds, fastest first
+         */
+        public int[] getBestTimes() {
+            return Arrays.copyOf(bestTimes, bestCount);
+        }
+    }
+
+    private StatisticsStore(File directory, RandomAccessFile log) {
+        this.directory = directory;
+        this.log = log;
+        for (int i = 0; i < DIFFICULTIES; i++) {
+            aggregates[i] = new Aggregate();
+        }
+    }
+
+    /**
+     * Opens the store in the given directory, creating it if needed
+     *
+     * @param directory where the files are kept
+     * @return the open store
+     * @throws IOException if the log cannot be opened or is not a game log
+     */
+    public static StatisticsStore open(File directory) throws IOException {
+        RandomAccessFile log = new RandomAccessFile(new File(directory, LOG_FILE), "rw");
+        StatisticsStore store = new StatisticsStore(directory, log);
+        try {
+            store.load();
+        } catch (IOException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * Reads the index and catches up with any log records it does not cover
+     */
+    private void load() throws IOException {
+        FileChannel channel = log.getChannel();
+        if (channel.size() < LOG_HEADER_BYTES) {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+            header.putInt(LOG_MAGIC).putShort(VERSION).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+            readFully(channel, header, 0);
+            if (header.getInt() != LOG_MAGIC || header.getShort() != VERSION) {
+                throw new IOException("Not a game log");
+            }
+        }
+        // A crash in the middle of an append leaves a partial record behind
+        long logRecords = (channel.size() - LOG_HEADER_BYTES) / RECORD_BYTES;
+        channel.truncate(LOG_HEADER_BYTES + logRecords * RECORD_BYTES);
+
+        if (!readIndex() || recordCount > logRecords) {
+            for (int i = 0; i < DIFFICULTIES; i++) {
+                aggregates[i] = new Aggregate();
+            }
+            recordCount = 0;
+        }
+        if (recordCount < logRecords) {
+            scan(channel, logRecords);
+            writeIndex();
+        }
+    }
+
+    /**
+     * Adds the log records from recordCount on to the aggregates
+     */
+    private void scan(FileChannel channel, long logRecords) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_RECORDS * RECORD_BYTES);
+        while (recordCount < logRecords) {
+            int records = (int) Math.min(SCAN_RECORDS, logRecords - recordCount);
+            buffer.clear();
+            buffer.limit(records * RECORD_BYTES);
+            readFully(channel, buffer, LOG_HEADER_BYTES + recordCount * RECORD_BYTES);
+            for (int i = 0; i < records; i++) {
+                int difficulty = buffer.get();
+                boolean won = buffer.get() == OUTCOME_WON;
+                buffer.getShort();
+                int timeMillis = buffer.getInt();
+                int clicks = buffer.getInt();
+                int fieldsRevealed = buffer.getInt();
+                if (difficulty >= 0 && difficulty < DIFFICULTIES) {
+                    aggregates[difficulty].add(won, timeMillis, clicks, fieldsRevealed);
+                }
+            }
+            recordCount += records;
+        }
+    }
+
+    /**
+     * Appends a finished game to the log and adds it to the aggregates
+     *
+     * @param difficulty difficulty level, 0 for a custom board
+     * @param won true if the game was won, false if it was lost
+     * @param timeMillis time the game took in milliseconds
+     * @param clicks number of moves made
+     * @param fieldsRevealed number of fields revealed at the end of the game
+     * @throws IOException if appending to the log fails
+     */
+    public void record(int difficulty, boolean won, long timeMillis, int clicks, int fieldsRevealed)
+            throws IOException {
+        if (difficulty < 0 || difficulty >= DIFFICULTIES) {
+            difficulty = 0;
+        }
+        int time = (int) Math.min(Integer.MAX_VALUE, Math.max(0, timeMillis));
+        recordBuffer.clear();
+        recordBuffer.put((byte) difficulty);
+        recordBuffer.put((byte) (won ? OUTCOME_WON : OUTCOME_LOST));
+        recordBuffer.putShort((short) 0);
+        recordBuffer.putInt(time);
+        recordBuffer.putInt(clicks);
+        recordBuffer.putInt(fieldsRevealed);
+        recordBuffer.flip();
+        FileChannel channel = log.getChannel();
+        long position = LOG_HEADER_BYTES + recordCount * RECORD_BYTES;
+        while (recordBuffer.hasRemaining()) {
+            position += channel.write(recordBuffer, position);
+        }
+
+        aggregates[difficulty].add(won, time, clicks, fieldsRevealed);
+        recordCount++;
+        writeIndex();
+    }
+
+    /**
+     * @param difficulty difficulty level, 0 for custom boards
+     * @return the totals of the difficulty, which change as more games are recorded
+     */
+    public Aggregate getAggregate(int difficulty) {
+        return aggregates[difficulty];
+    }
+
+    /**
+     * @return number of games recorded
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Waits for the pending index writes, for up to CLOSE_TIMEOUT_MILLIS, and closes the log file
+     */
+    public void close() throws IOException {
+        indexWriter.shutdown();
+        try {
+            indexWriter.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+
+    //******************* Index file ****************************
+
+    /**
+     * @return false if there is no readable index
+     */
+    private boolean readIndex() throws IOException {
+        File indexFile = new File(directory, INDEX_FILE);
+        if (indexFile.length() != INDEX_BYTES) {
+            return false;
+        }
+        RandomAccessFile in = new RandomAccessFile(indexFile, "r");
+        try {
+            indexBuffer.clear();
+            readFully(in.getChannel(), indexBuffer, 0);
+        } finally {
+            in.close();
+        }
+        if (indexBuffer.getInt() != INDEX_MAGIC || indexBuffer.getShort() != VERSION) {
+            return false;
+        }
+        recordCount = indexBuffer.getLong();
+        for (Aggregate aggregate : aggregates) {
+            aggregate.gamesPlayed = indexBuffer.getInt();
+            aggregate.gamesWon = indexBuffer.getInt();
+            aggregate.totalWinMillis = indexBuffer.getLong();
+            aggregate.totalClicks = indexBuffer.getLong();
+            aggregate.totalFieldsRevealed = indexBuffer.getLong();
+            aggregate.bestCount = Math.max(0, Math.min(TOP_K, indexBuffer.getInt()));
+            for (int i = 0; i < TOP_K; i++) {
+                aggregate.bestTimes[i] = indexBuffer.getInt();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Snapshots the index and hands it to the background writer
+     */
+    private void writeIndex() {
+        indexBuffer.clear();
+        indexBuffer.putInt(INDEX_MAGIC);
+        indexBuffer.putShort(VERSION);
+        indexBuffer.putLong(recordCount);
+        for (Aggregate aggregate : aggregates) {
+            indexBuffer.putInt(aggregate.gamesPlayed);
+            indexBuffer.putInt(aggregate.gamesWon);
+            indexBuffer.putLong(aggregate.totalWinMillis);
+            indexBuffer.putLong(aggregate.totalClicks);
+            indexBuffer.putLong(aggregate.totalFieldsRevealed);
+            indexBuffer.putInt(aggregate.bestCount);
+            for (int i = 0; i < TOP_K; i++) {
+                indexBuffer.putInt(aggregate.bestTimes[i]);
+            }
+        }
+        final byte[] snapshot = Arrays.copyOf(indexBuffer.array(), indexBuffer.position());
+
+        indexWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeIndexFile(snapshot);
+                } catch (IOException e) {
+                    // The log is complete, so the next open catches up from the old index
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the index to a temporary file first, so a failed write never replaces a good one.
+     * Runs on the background writer.
+     *
+     * @param snapshot bytes of the index
+     */
+    private void writeIndexFile(byte[] snapshot) throws IOException {
+        File indexFile = new File(directory, INDEX_FILE);
+        File tempFile = new File(directory, INDEX_FILE + ".tmp");
+        FileOutputStream out = new FileOutputStream(tempFile);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tempFile.renameTo(indexFile)) {
+            tempFile.delete();
+            throw new IOException("Could not replace the statistics index");
+        }
+    }
+
+    /**
+     * Reads from the channel at the given position until the buffer is full
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Statistics file is truncated");
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,218 @@
+package hu.ait.android.minesweeper.view;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.View;
+
+import hu.ait.android.minesweeper.EndlessActivity;
+import hu.ait.android.minesweeper.model.ChunkedBoard;
+import hu.ait.android.minesweeper.model.EndlessHolder;
+import hu.ait.android.minesweeper.model.MinesweeperModel;
+
+/**
+ * Scrollable viewport over the endless board held by EndlessHolder. Only the visible fields
+ * are drawn, and reading them is what generates or loads their chunks, so the board is only
+ * ever materialized around where the player looks and reveals.
+ */
+public class EndlessView extends View {
+
+    /**
+     * Size of a field, in dp
+     */
+    public static final int FIELD_SIZE = 40;
+
+    /**
+     * Width of the field edge lines
+     */
+    private static final int LINE_WIDTH = 3;
+
+    private Paint paintBackground;
+    private Paint paintLine;
+    private Paint paintNumber;
+
+    /**
+     * Field images and numbers, pre-scaled to the field size
+     */
+    private SpriteAtlas spriteAtlas;
+
+    /**
+     * Size of a field on screen, in pixels
+     */
+    private int fieldSize;
+
+    // Position of the top left corner of the view on the board, in pixels. Long, since the
+    // board is wider than an int's worth of pixels.
+    private long scrollOffsetX = 0;
+    private long scrollOffsetY = 0;
+
+    private GestureDetector gestureDetector;
+
+    public EndlessView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        paintBackground = new Paint();
+        paintBackground.setColor(Color.GRAY);
+        paintBackground.setStyle(Paint.Style.FILL);
+
+        paintLine = new Paint();
+        paintLine.setColor(Color.BLACK);
+        paintLine.setStyle(Paint.Style.STROKE);
+        paintLine.setStrokeWidth(LINE_WIDTH);
+
+        paintNumber = new Paint();
+        paintNumber.setColor(Color.RED);
+
+        spriteAtlas = new SpriteAtlas(getResources());
+        fieldSize = Math.round(FIELD_SIZE * getResources().getDisplayMetrics().density);
+
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                scrollViewport(Math.round(distanceX), Math.round(distanceY));
+                return true;
+            }
+
+            @Override
+            public boolean onSingleTapUp(MotionEvent e) {
+                touchField(e.getX(), e.getY());
+                return true;
+            }
+        });
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (w == 0 || h == 0) {
+            return;
+        }
+        paintNumber.setTextSize(fieldSize);
+        spriteAtlas.build(fieldSize, fieldSize, paintNumber);
+
+        long center = EndlessHolder.getViewCenter();
+        if (center == EndlessHolder.NO_POSITION) {
+            // A new or reloaded board starts on an opening near the origin, revealed for the player
+            ChunkedBoard board = EndlessHolder.getBoard();
+            center = board.findOpening();
+            board.onTouchHandler((int) (center >> 32), (int) center);
+            EndlessHolder.setViewCenter(center);
+            ((EndlessActivity) getContext()).onBoardChanged();
+        }
+        scrollOffsetX = (center >> 32) * fieldSize + fieldSize / 2 - w / 2;
+        scrollOffsetY = (long) (int) center * fieldSize + fieldSize / 2 - h / 2;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        ChunkedBoard board = EndlessHolder.getBoard();
+        canvas.drawRect(0, 0, getWidth(), getHeight(), paintBackground);
+
+        long firstCol = floorDiv(scrollOffsetX, fieldSize);
+        long firstRow = floorDiv(scrollOffsetY, fieldSize);
+        long lastCol = floorDiv(scrollOffsetX + getWidth() - 1, fieldSize);
+        long lastRow = floorDiv(scrollOffsetY + getHeight() - 1, fieldSize);
+        boolean isLost = board.isLost();
+
+        for (long row = firstRow; row <= lastRow; row++) {
+            for (long col = firstCol; col <= lastCol; col++) {
+                float left = col * fieldSize - scrollOffsetX;
+                float top = row * fieldSize - scrollOffsetY;
+                drawFieldContent(canvas, board, (int) col, (int) row, left, top);
+                if (isLost && board.isMine((int) col, (int) row)) {
+                    spriteAtlas.draw(canvas, SpriteAtlas.MINE, left, top, fieldSize, fieldSize);
+                }
+                canvas.drawRect(left, top, left + fieldSize, top + fieldSize, paintLine);
+            }
+        }
+    }
+
+    /**
+     * Draws the image or number for the state of the given field
+     */
+    private void drawFieldContent(Canvas canvas, ChunkedBoard board, int col, int row, float left, float top) {
+        switch (board.getFieldContent(col, row)) {
+            case MinesweeperModel.EMPTY:
+                spriteAtlas.draw(canvas, SpriteAtlas.SQUARE, left, top, fieldSize, fieldSize);
+                break;
+
+            case MinesweeperModel.NUMBER:
+                spriteAtlas.draw(canvas, SpriteAtlas.numberSprite(board.numberOfMinesNearby(col, row)),
+                        left, top, fieldSize, fieldSize);
+                break;
+
+            case MinesweeperModel.FLAG:
+                spriteAtlas.draw(canvas, SpriteAtlas.FLAG, left, top, fieldSize, fieldSize);
+                break;
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (event.getAction() == MotionEvent.ACTION_DOWN && getParent() != null) {
+            getParent().requestDisallowInterceptTouchEvent(true);
+        }
+        gestureDetector.onTouchEvent(event);
+        return true;
+    }
+
+    /**
+     * Passes a touch at the given view coordinates to the board, unless the game is over
+     */
+    private void touchField(float x, float y) {
+        ChunkedBoard board = EndlessHolder.getBoard();
+        if (fieldSize == 0 || board.isLost()) {
+            return;
+        }
+        int col = (int) floorDiv(scrollOffsetX + (long) x, fieldSize);
+        int row = (int) floorDiv(scrollOffsetY + (long) y, fieldSize);
+        board.onTouchHandler(col, row);
+        ((EndlessActivity) getContext()).onBoardChanged();
+        invalidate();
+    }
+
+    /**
+     * Moves the viewport by the given distance. The board has no edges to stop at.
+     *
+     * @param dx horizontal distance in pixels
+     * @param dy vertical distance in pixels
+     */
+    private void scrollViewport(int dx, int dy) {
+        scrollOffsetX += dx;
+        scrollOffsetY += dy;
+        long centerCol = floorDiv(scrollOffsetX + getWidth() / 2, fieldSize);
+        long centerRow = floorDiv(scrollOffsetY + getHeight() / 2, fieldSize);
+        EndlessHolder.setViewCenter((centerCol << 32) | (centerRow & 0xFFFFFFFFL));
+        invalidate();
+    }
+
+    /**
+     * Shows a new board from its opening
+     */
+    public void showNewBoard() {
+        onSizeChanged(getWidth(), getHeight(), getWidth(), getHeight());
+        invalidate();
+    }
+
+    /**
+     * Division rounding towards negative infinity, so fields left of or above the origin map
+     * to negative coordinates
+     */
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        if ((dividend % divisor != 0) && ((dividend < 0) != (divisor < 0))) {
+            quotient--;
+        }
+        return quotient;
+    }
+}
@@ -2,17 +2,28 @@ package hu.ait.android.minesweeper.view;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Shader;
 import android.util.AttributeSet;
+import android.view.GestureDetector;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 
 import hu.ait.android.minesweeper.MainActivity;
 import hu.ait.android.minesweeper.R;
+import hu.ait.android.minesweeper.metrics.Metrics;
+import hu.ait.android.minesweeper.model.GameHolder;
+import hu.ait.android.minesweeper.model.MineProbabilityMap;
 import hu.ait.android.minesweeper.model.MinesweeperModel;
+import hu.ait.android.minesweeper.model.MinesweeperSolver;
+import hu.ait.android.minesweeper.model.MoveJournal;
+import hu.ait.android.minesweeper.model.MoveReplayer;
 
 public class MinesweeperView extends View {
 
@@ -20,6 +31,23 @@ public class MinesweeperView extends View {
      * Original size for numbers before being scaled by size of board
      */
     public static final int NUMBER_SIZE = 300;
+
+    /**
+     * Smallest size of a field, in dp, before the board is shown in a scrollable viewport
+     * instead of being fit to the view
+     */
+    public static final int MIN_FIELD_SIZE = 32;
+
+    /**
+     * Largest size of a field, in dp, the viewport can be zoomed in to
+     */
+    public static final int MAX_FIELD_SIZE = 128;
+
+    /**
+     * Width of the field edge lines
+     */
+    private static final int LINE_WIDTH = 5;
+
     /**
      * Board game background style
      */
@@ -30,10 +58,35 @@ public class MinesweeperView extends View {
      */
     private Paint paintLine;
 
+    /**
+     * Style filling an area with the field edge lines, tiled from a single field
+     */
+    private Paint paintGrid;
+
     /**
      * Number style
      */
     private Paint paintNumber;
+
+    /**
+     * Outline of the field a hint points at
+     */
+    private Paint paintHint;
+
+    /**
+     * Row-major index of the field the last hint points at, or -1 if no hint is shown
+     */
+    private int hintCell = -1;
+
+    /**
+     * Tint of unrevealed fields in the probability overlay, more opaque the likelier a mine
+     */
+    private Paint paintProbability;
+
+    /**
+     * If true, every unrevealed field is tinted by its mine probability
+     */
+    private boolean probabilityOverlay = false;
     /**
      * How many fields wide the game board is
      */
@@ -44,23 +97,95 @@ public class MinesweeperView extends View {
      */
     private int gameBoardHeight;
 
-    // Image bitmaps
-    private Bitmap emptyField;
-    private Bitmap flagField;
-    private Bitmap mineField;
+    /**
+     * Field images and numbers, pre-scaled to the current field size
+     */
+    private SpriteAtlas spriteAtlas;
+
+    /**
+     * Offscreen copy of the visible part of the game board. Touches only redraw the fields they
+     * changed into this bitmap, and onDraw copies it to the screen.
+     */
+    private Bitmap boardBitmap;
+
+    /**
+     * Canvas drawing into boardBitmap
+     */
+    private Canvas boardCanvas;
+
+    /**
+     * If true, the whole board has to be redrawn into boardBitmap on the next onDraw
+     */
+    private boolean boardDirty = true;
+
+    /**
+     * Reused rectangle holding the screen area changed by a touch
+     */
+    private final Rect dirtyRect = new Rect();
+
+    //******************* Viewport ****************************
+
+    /**
+     * If true, the board is too large to fit the view and is shown in a scrollable,
+     * zoomable viewport. Otherwise the whole board is stretched over the view.
+     */
+    private boolean viewportMode = false;
+
+    // Size of one field on screen, in pixels
+    private int fieldWidth;
+    private int fieldHeight;
+
+    // Offset of the visible area from the top left corner of the board, in pixels
+    private int scrollOffsetX = 0;
+    private int scrollOffsetY = 0;
+
+    /**
+     * Field size while a zoom gesture is in progress. The sprite atlas is only rebuilt once
+     * the gesture ends.
+     */
+    private float zoomFieldSize;
+
+    /**
+     * Single field tile the grid shader repeats, rebuilt when the field size changes
+     */
+    private Bitmap gridTile;
+
+    /**
+     * Shader repeating gridTile, used by paintGrid
+     */
+    private BitmapShader gridShader;
+
+    /**
+     * Reused matrix aligning the grid tiles with the scrolled and zoomed board
+     */
+    private final Matrix gridMatrix = new Matrix();
+
+    private GestureDetector gestureDetector;
+    private ScaleGestureDetector scaleGestureDetector;
+
+    /**
+     * Replay being stepped through, or null. Touches are ignored while replaying.
+     */
+    private MoveReplayer replayer;
+
+    /**
+     * Game the replay is played on and drawn from while it runs, so the game in progress
+     * keeps its board, clock and counts
+     */
+    private MinesweeperModel replayGame;
 
 
     public MinesweeperView(Context context, AttributeSet attrs) {
         super(context, attrs);
 
         // Storing the game board width and height
-        gameBoardWidth = MinesweeperModel.getInstance().gameBoardWidth;
-        gameBoardHeight = MinesweeperModel.getInstance().gameBoardHeight;
+        gameBoardWidth = GameHolder.getGame().getGameBoardWidth();
+        gameBoardHeight = GameHolder.getGame().getGameBoardHeight();
 
         // If there is a new game board, redraw the screen and set newGameBoard to false
-        if (MinesweeperModel.getInstance().newGameBoard) {
+        if (GameHolder.getGame().isNewGameBoard()) {
             clearScreen();
-            MinesweeperModel.getInstance().newGameBoard = false;
+            GameHolder.getGame().setNewGameBoard(false);
         }
 
         // Setting the background color for the game board view
@@ -72,147 +197,461 @@ public class MinesweeperView extends View {
         paintLine = new Paint();
         paintLine.setColor(Color.BLACK);
         paintLine.setStyle(Paint.Style.STROKE);
-        paintLine.setStrokeWidth(5);
+        paintLine.setStrokeWidth(LINE_WIDTH);
+
+        // The grid is drawn by repeating a single field's edge lines
+        paintGrid = new Paint();
+        paintGrid.setStyle(Paint.Style.FILL);
 
         // Setting the text style for Minesweeper field numbers
         paintNumber = new Paint();
         paintNumber.setColor(Color.RED);
 
-        // Dynamically size number text
-        paintNumber.setTextSize(NUMBER_SIZE/MinesweeperModel.getInstance().gameBoardWidth);
+        // Green outlines a safe field to reveal, blue a mine to flag
+        paintHint = new Paint();
+        paintHint.setStyle(Paint.Style.STROKE);
+        paintHint.setStrokeWidth(LINE_WIDTH * 2);
 
+        paintProbability = new Paint();
+        paintProbability.setStyle(Paint.Style.FILL);
 
 
-        // Image for empty field
-        emptyField = BitmapFactory.decodeResource(getResources(), R.drawable.square);
+        // Images for empty, flag and mine fields. Scaled once the view size is known.
+        spriteAtlas = new SpriteAtlas(getResources());
 
-        // Image for flag field
-        flagField = BitmapFactory.decodeResource(getResources(), R.drawable.flag);
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
 
-        // Image for mine field
-        mineField = BitmapFactory.decodeResource(getResources(), R.drawable.mine);
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                scrollViewport(Math.round(distanceX), Math.round(distanceY));
+                return true;
+            }
 
+            @Override
+            public boolean onSingleTapUp(MotionEvent e) {
+                touchField(e.getX(), e.getY());
+                return true;
+            }
+        });
+
+        scaleGestureDetector = new ScaleGestureDetector(context,
+                new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                    @Override
+                    public boolean onScale(ScaleGestureDetector detector) {
+                        zoomViewport(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                        return true;
+                    }
+
+                    @Override
+                    public void onScaleEnd(ScaleGestureDetector detector) {
+                        buildFieldImages();
+                        boardDirty = true;
+                        invalidate();
+                    }
+                });
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (w == 0 || h == 0) {
+            return;
+        }
+
+        int minFieldSize = dpToPixels(MIN_FIELD_SIZE);
+        viewportMode = w / gameBoardWidth < minFieldSize || h / gameBoardHeight < minFieldSize;
+        if (viewportMode) {
+            fieldWidth = minFieldSize;
+            fieldHeight = minFieldSize;
+        } else {
+            fieldWidth = w / gameBoardWidth;
+            fieldHeight = h / gameBoardHeight;
+        }
+        zoomFieldSize = fieldWidth;
+        scrollViewport(0, 0);
+        buildFieldImages();
+
+        boardBitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        Metrics.countBitmap();
+        boardCanvas = new Canvas(boardBitmap);
+        boardDirty = true;
+    }
+
+    /**
+     * Rebuilds the sprite atlas and the grid tile for the current field size
+     */
+    private void buildFieldImages() {
+        // Dynamically size number text
+        paintNumber.setTextSize(NUMBER_SIZE * fieldWidth / (float) getWidth());
+        spriteAtlas.build(fieldWidth, fieldHeight, paintNumber);
+
+        if (gridTile == null || gridTile.getWidth() != fieldWidth || gridTile.getHeight() != fieldHeight) {
+            gridTile = Bitmap.createBitmap(fieldWidth, fieldHeight, Bitmap.Config.ARGB_8888);
+            Metrics.countBitmap();
+            gridTile.eraseColor(Color.TRANSPARENT);
+            // Half of each edge line falls inside the tile, so neighboring tiles form full lines
+            new Canvas(gridTile).drawRect(0, 0, fieldWidth, fieldHeight, paintLine);
+            gridShader = new BitmapShader(gridTile, Shader.TileMode.REPEAT, Shader.TileMode.REPEAT);
+            paintGrid.setShader(gridShader);
+        }
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
+        long startNanos = Metrics.startTimer();
         super.onDraw(canvas);
 
-        canvas.drawRect(0, 0, getWidth(), getHeight(), paintBackground);
-        drawGameBoard(canvas);
-        drawFields(canvas);
-        if (MinesweeperModel.getInstance().isLost()) {
+        if (boardBitmap != null) {
+            if (boardDirty) {
+                boardCanvas.drawRect(0, 0, getWidth(), getHeight(), paintBackground);
+                drawFields(boardCanvas);
+                drawGameBoard(boardCanvas);
+                boardDirty = false;
+            }
+            canvas.drawBitmap(boardBitmap, 0, 0, null);
+        }
+
+        if (shownGame().isLost()) {
             ((MainActivity)getContext()).showFinishedGameMessage(getContext().getString(R.string.lostMessage));
-        } else if (MinesweeperModel.getInstance().isWon()) {
+        } else if (shownGame().isWon()) {
             ((MainActivity)getContext()).showFinishedGameMessage(getContext().getString(R.string.wonMessage));
         }
-
-        emptyField = Bitmap.createScaledBitmap(emptyField,
-                getWidth() / gameBoardWidth,
-                getHeight() / gameBoardHeight, true);
-
-        flagField = Bitmap.createScaledBitmap(flagField,
-                getWidth() / gameBoardWidth,
-                getHeight() / gameBoardHeight, true);
-
-        mineField = Bitmap.createScaledBitmap(mineField,
-                getWidth() / gameBoardWidth,
-                getHeight() / gameBoardHeight, true);
+        Metrics.recordSince(Metrics.DRAW_NANOS, startNanos);
+        Metrics.endFrame();
     }
 
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        if(event.getAction() == MotionEvent.ACTION_DOWN &&
-                !(MinesweeperModel.getInstance().isLost() || MinesweeperModel.getInstance().isWon())) {
+        if (viewportMode) {
+            if (event.getAction() == MotionEvent.ACTION_DOWN && getParent() != null) {
+                // Keep the surrounding ScrollView from taking over drags meant for the board
+                getParent().requestDisallowInterceptTouchEvent(true);
+            }
+            scaleGestureDetector.onTouchEvent(event);
+            if (!scaleGestureDetector.isInProgress()) {
+                gestureDetector.onTouchEvent(event);
+            }
+            return true;
+        }
 
-            int tX = ((int) event.getX()) / (getWidth() / gameBoardWidth);
-            int tY = ((int) event.getY()) / (getHeight() / gameBoardHeight);
+        if(event.getAction() == MotionEvent.ACTION_DOWN) {
+            touchField(event.getX(), event.getY());
+        }
 
-            if (tX < gameBoardWidth && tY < gameBoardHeight) {
-                MinesweeperModel.getInstance().onTouchHandler(tX, tY);
-                // Check if the game has been lost or won and send a snackbar if it has
+        return super.onTouchEvent(event);
+    }
 
-                invalidate();
-            }
+    /**
+     * Passes a touch at the given view coordinates to the model, unless the game is over
+     *
+     * @param x X coordinate of the touch in the view
+     * @param y Y coordinate of the touch in the view
+     */
+    private void touchField(float x, float y) {
+        if (fieldWidth == 0 || fieldHeight == 0 || replayer != null ||
+                GameHolder.getGame().isLost() || GameHolder.getGame().isWon()) {
+            return;
         }
 
-        return super.onTouchEvent(event);
+        int tX = ((int) x + scrollOffsetX) / fieldWidth;
+        int tY = ((int) y + scrollOffsetY) / fieldHeight;
+
+        if (tX >= 0 && tY >= 0 && tX < gameBoardWidth && tY < gameBoardHeight) {
+            clearHint();
+            GameHolder.getGame().onTouchHandler(tX, tY);
+            updateTimer();
+            ((MainActivity) getContext()).recordFinishedGame();
+            // Check if the game has been lost or won and send a snackbar if it has
+
+            updateProbabilityOverlay();
+            invalidateChangedFields();
+        }
     }
 
     /**
-     * Draws the Minesweeper game board onto the given canvas
+     * Moves the viewport by the given distance, keeping it inside the board
      *
-     * @param canvas Where the game board will be drawn
+     * @param dx horizontal distance in pixels
+     * @param dy vertical distance in pixels
      */
-    private void drawGameBoard(Canvas canvas) {
-        // border
-        canvas.drawRect(0, 0, getWidth(), getHeight(), paintLine);
-        // draws the horizontal lines
-        for (int i = 1; i < gameBoardHeight; i++) {
-            canvas.drawLine(0, i * (getHeight() / gameBoardHeight),
-                    getWidth(), i * (getHeight() / gameBoardHeight),
-                    paintLine);
+    private void scrollViewport(int dx, int dy) {
+        int maxScrollX = Math.max(0, gameBoardWidth * fieldWidth - getWidth());
+        int maxScrollY = Math.max(0, gameBoardHeight * fieldHeight - getHeight());
+        int newScrollX = Math.max(0, Math.min(maxScrollX, scrollOffsetX + dx));
+        int newScrollY = Math.max(0, Math.min(maxScrollY, scrollOffsetY + dy));
+
+        if (newScrollX != scrollOffsetX || newScrollY != scrollOffsetY) {
+            scrollOffsetX = newScrollX;
+            scrollOffsetY = newScrollY;
+            boardDirty = true;
+            invalidate();
+        }
+    }
+
+    /**
+     * Zooms the viewport by the given factor, keeping the board point under the focus in place
+     *
+     * @param scaleFactor factor to multiply the field size by
+     * @param focusX X coordinate of the zoom focus in the view
+     * @param focusY Y coordinate of the zoom focus in the view
+     */
+    private void zoomViewport(float scaleFactor, float focusX, float focusY) {
+        zoomFieldSize = Math.max(dpToPixels(MIN_FIELD_SIZE),
+                Math.min(dpToPixels(MAX_FIELD_SIZE), zoomFieldSize * scaleFactor));
+        int newFieldSize = Math.round(zoomFieldSize);
+        if (newFieldSize == fieldWidth) {
+            return;
+        }
+
+        float boardX = (scrollOffsetX + focusX) / fieldWidth;
+        float boardY = (scrollOffsetY + focusY) / fieldHeight;
+        fieldWidth = newFieldSize;
+        fieldHeight = newFieldSize;
+        scrollOffsetX = 0;
+        scrollOffsetY = 0;
+        scrollViewport(Math.round(boardX * fieldWidth - focusX), Math.round(boardY * fieldHeight - focusY));
+        boardDirty = true;
+        invalidate();
+    }
+
+    /**
+     * Redraws the fields changed by the last touch into the offscreen board and invalidates
+     * only the screen area they cover. Losing reveals every mine, so it redraws the whole board.
+     */
+    private void invalidateChangedFields() {
+        MinesweeperModel model = shownGame();
+        if (boardBitmap == null || boardDirty || model.isLost()) {
+            boardDirty = true;
+            invalidate();
+            return;
         }
 
-        // draws the vertical lines
-        for (int i = 1; i < gameBoardWidth; i++) {
-            canvas.drawLine(i * (getWidth() / gameBoardWidth), 0,
-                    i * (getWidth() / gameBoardWidth), getHeight(),
-                    paintLine);
+        int[] changedCells = model.getChangedCells();
+        int changedCellCount = model.getChangedCellCount();
+        if (changedCellCount == 0) {
+            return;
+        }
+
+        dirtyRect.setEmpty();
+        for (int i = 0; i < changedCellCount; i++) {
+            redrawField(changedCells[i]);
+        }
+        if (!dirtyRect.isEmpty()) {
+            invalidate(dirtyRect);
+        }
+    }
+
+    /**
+     * Redraws a single field into the offscreen board and adds its screen area to dirtyRect,
+     * unless it is off screen
+     *
+     * @param cell row-major index of the field
+     */
+    private void redrawField(int cell) {
+        int col = cell % gameBoardWidth;
+        int row = cell / gameBoardWidth;
+        int left = (int) getXCoordinate(col);
+        int top = (int) getYCoordinate(row);
+        if (left >= getWidth() || top >= getHeight() || left + fieldWidth <= 0 || top + fieldHeight <= 0) {
+            // Off screen, it will be drawn when scrolled into view
+            return;
         }
+        drawField(boardCanvas, col, row);
 
+        // Field edge lines are centered on the field border, so include their overhang
+        dirtyRect.union(left - LINE_WIDTH, top - LINE_WIDTH,
+                left + fieldWidth + LINE_WIDTH, top + fieldHeight + LINE_WIDTH);
+    }
 
+    /**
+     * Draws the Minesweeper game board's field edge lines onto the given canvas, over the
+     * visible part of the board only
+     *
+     * @param canvas Where the game board will be drawn
+     */
+    private void drawGameBoard(Canvas canvas) {
+        float right = Math.min(getWidth(), gameBoardWidth * fieldWidth - scrollOffsetX);
+        float bottom = Math.min(getHeight(), gameBoardHeight * fieldHeight - scrollOffsetY);
+        drawGrid(canvas, 0, 0, right, bottom);
+    }
 
+    /**
+     * Fills the given area with field edge lines aligned to the scrolled board
+     */
+    private void drawGrid(Canvas canvas, float left, float top, float right, float bottom) {
+        // While zooming, the tile is stretched to the new field size until it is rebuilt
+        gridMatrix.setScale(fieldWidth / (float) gridTile.getWidth(), fieldHeight / (float) gridTile.getHeight());
+        gridMatrix.postTranslate(-scrollOffsetX, -scrollOffsetY);
+        gridShader.setLocalMatrix(gridMatrix);
+        canvas.drawRect(left, top, right, bottom, paintGrid);
     }
 
     /**
-     * Draws the state of each field on the game board.
+     * Draws the state of each visible field on the game board.
      *
      * @param canvas Where the fields will be drawn
      */
     private void drawFields(Canvas canvas) {
-        for (int i = 0; i < gameBoardHeight; i++) {
-            for (int j = 0; j < gameBoardWidth; j++) {
-                short content = MinesweeperModel.getInstance().getFieldContent(j, i);
+        MinesweeperModel model = shownGame();
+        boolean isLost = model.isLost();
+
+        int firstCol = scrollOffsetX / fieldWidth;
+        int firstRow = scrollOffsetY / fieldHeight;
+        int lastCol = Math.min(gameBoardWidth - 1, (scrollOffsetX + getWidth() - 1) / fieldWidth);
+        int lastRow = Math.min(gameBoardHeight - 1, (scrollOffsetY + getHeight() - 1) / fieldHeight);
+
+        for (int i = firstRow; i <= lastRow; i++) {
+            for (int j = firstCol; j <= lastCol; j++) {
+                drawFieldContent(canvas, j, i);
+                drawHint(canvas, j, i);
+
+                if (isLost && model.isMine(j, i)) {
+                    spriteAtlas.draw(canvas, SpriteAtlas.MINE, getXCoordinate(j), getYCoordinate(i),
+                            fieldWidth, fieldHeight);
+                }
+            }
+        }
+    }
+
+    /**
+     * Redraws a single field, including its background and edge lines, over whatever was drawn
+     * there before.
+     *
+     * @param canvas Where the field will be drawn
+     * @param col Column of the field
+     * @param row Row of the field
+     */
+    private void drawField(Canvas canvas, int col, int row) {
+        float left = getXCoordinate(col);
+        float top = getYCoordinate(row);
+        float right = left + fieldWidth;
+        float bottom = top + fieldHeight;
+
+        canvas.drawRect(left, top, right, bottom, paintBackground);
+        drawFieldContent(canvas, col, row);
+        drawGrid(canvas, left, top, right, bottom);
+        drawHint(canvas, col, row);
+    }
+
+    /**
+     * Tints the given unrevealed field by its mine probability, if the overlay is on
+     *
+     * @param canvas Where the tint will be drawn
+     * @param col Column of the field
+     * @param row Row of the field
+     */
+    private void drawProbability(Canvas canvas, int col, int row) {
+        MinesweeperModel model = GameHolder.getGame();
+        if (!probabilityOverlay || replayGame != null || model.isLost() || model.isWon()) {
+            return;
+        }
+        float probability = GameHolder.getProbabilityMap().getProbability(col, row);
+        if (Float.isNaN(probability) || probability <= 0) {
+            return;
+        }
+        paintProbability.setColor(Color.RED);
+        paintProbability.setAlpha(Math.round(probability * 200));
+        float left = getXCoordinate(col);
+        float top = getYCoordinate(row);
+        canvas.drawRect(left, top, left + fieldWidth, top + fieldHeight, paintProbability);
+    }
 
-                switch (content) {
-                    case MinesweeperModel.EMPTY:
+    /**
+     * Shows or hides the mine probability overlay
+     *
+     * @param on true to tint every unrevealed field by its mine probability
+     * @return false if some fields only show an approximate probability, because the numbers
+     * around them are too many to weigh exactly
+     */
+    public boolean setProbabilityOverlay(boolean on) {
+        probabilityOverlay = on;
+        updateProbabilityOverlay();
+        boardDirty = true;
+        invalidate();
+        return !on || GameHolder.getProbabilityMap().isExact();
+    }
 
-                        canvas.drawBitmap(emptyField, getXCoordinate(j), getYCoordinate(i), null);
-                        break;
+    public boolean isProbabilityOverlayOn() {
+        return probabilityOverlay;
+    }
 
-                    case MinesweeperModel.NUMBER:
-                        int nearbyMines = MinesweeperModel.getInstance().numberOfMinesNearby(j, i);
-                        canvas.drawText(String.valueOf(nearbyMines),
-                                getXCoordinate(j), getUpperYCoordinate(i),
-                                paintNumber);
-                        break;
+    /**
+     * Catches the probabilities up with the game after a move. A move changes the odds of
+     * fields far from the ones it revealed, so the whole board is redrawn.
+     */
+    private void updateProbabilityOverlay() {
+        if (!probabilityOverlay) {
+            return;
+        }
+        MinesweeperModel model = GameHolder.getGame();
+        if (!model.isLost() && !model.isWon()) {
+            GameHolder.getProbabilityMap().update();
+        }
+        // Also clears the tint once the game is over
+        boardDirty = true;
+    }
 
-                    case MinesweeperModel.FLAG:
+    /**
+     * Outlines the given field if the last hint points at it
+     *
+     * @param canvas Where the outline will be drawn
+     * @param col Column of the field
+     * @param row Row of the field
+     */
+    private void drawHint(Canvas canvas, int col, int row) {
+        if (hintCell != row * gameBoardWidth + col) {
+            return;
+        }
+        float left = getXCoordinate(col);
+        float top = getYCoordinate(row);
+        canvas.drawRect(left + LINE_WIDTH, top + LINE_WIDTH,
+                left + fieldWidth - LINE_WIDTH, top + fieldHeight - LINE_WIDTH, paintHint);
+    }
 
-                        canvas.drawBitmap(flagField, getXCoordinate(j), getYCoordinate(i), null);
-                        break;
+    /**
+     * Draws the image or number for the state of the given field
+     *
+     * @param canvas Where the field will be drawn
+     * @param col Column of the field
+     * @param row Row of the field
+     */
+    private void drawFieldContent(Canvas canvas, int col, int row) {
+        short content = shownGame().getFieldContent(col, row);
 
-                    case MinesweeperModel.MINE:
+        switch (content) {
+            case MinesweeperModel.UNREVEALED:
+                drawProbability(canvas, col, row);
+                break;
 
-                        canvas.drawBitmap(mineField, getXCoordinate(j), getYCoordinate(i), null);
-                        break;
+            case MinesweeperModel.EMPTY:
 
-                }
+                spriteAtlas.draw(canvas, SpriteAtlas.SQUARE, getXCoordinate(col), getYCoordinate(row),
+                        fieldWidth, fieldHeight);
+                break;
 
-            }
-        }
+            case MinesweeperModel.NUMBER:
+                int nearbyMines = shownGame().numberOfMinesNearby(col, row);
+                spriteAtlas.draw(canvas, SpriteAtlas.numberSprite(nearbyMines),
+                        getXCoordinate(col), getYCoordinate(row), fieldWidth, fieldHeight);
+                break;
 
-        if (MinesweeperModel.getInstance().isLost()) {
-            int[][] mines = MinesweeperModel.getInstance().getMines();
+            case MinesweeperModel.FLAG:
+
+                spriteAtlas.draw(canvas, SpriteAtlas.FLAG, getXCoordinate(col), getYCoordinate(row),
+                        fieldWidth, fieldHeight);
+                break;
+
+            case MinesweeperModel.MINE:
+
+                spriteAtlas.draw(canvas, SpriteAtlas.MINE, getXCoordinate(col), getYCoordinate(row),
+                        fieldWidth, fieldHeight);
+                break;
 
-            for (int i = 0; i < mines.length; i++) {
-                mineField = Bitmap.createScaledBitmap(mineField,
-                        getWidth() / gameBoardWidth,
-                        getHeight() / gameBoardHeight, true);
-                canvas.drawBitmap(mineField, getXCoordinate(mines[i][1]), getYCoordinate(mines[i][0]), null);
-            }
         }
     }
 
@@ -223,7 +662,7 @@ public class MinesweeperView extends View {
      * @return X coordinate of the field
      */
     private float getXCoordinate(int col) {
-        return col * (getWidth() / gameBoardWidth);
+        return col * fieldWidth - scrollOffsetX;
     }
 
     /**
@@ -233,27 +672,204 @@ public class MinesweeperView extends View {
      * @return Y coordinate of the field
      */
     private float getYCoordinate(int row) {
-        return row * (getHeight() / gameBoardHeight);
+        return row * fieldHeight - scrollOffsetY;
     }
 
     /**
-     * Finds the uppermost Y coordinate of the given field on the canvas
+     * Converts the given size in dp to pixels on this screen
+     */
+    private int dpToPixels(int dp) {
+        return Math.round(dp * getResources().getDisplayMetrics().density);
+    }
+
+    /**
+     * Asks the solver for a field it can prove safe, or failing that one it can prove to be a
+     * mine, and outlines it until the next move. In the viewport, the field is scrolled into view.
      *
-     * @param row Row of the field
-     * @return Uppermost Y coordinate of the field
+     * @return false if the solver proves nothing, so the player has to guess, unless the solver
+     * was not complete
      */
-    private float getUpperYCoordinate(int row) {
-        return getYCoordinate(row) + (getHeight() / gameBoardHeight);
+    public boolean showHint() {
+        MinesweeperModel model = GameHolder.getGame();
+        clearHint();
+        if (replayer != null || model.isLost() || model.isWon()) {
+            return false;
+        }
+
+        MinesweeperSolver solver = GameHolder.getSolver();
+        solver.update();
+        int cell = solver.findSafeCell();
+        paintHint.setColor(Color.GREEN);
+        if (cell < 0) {
+            int[] mineCells = solver.getMineCells();
+            if (mineCells.length == 0) {
+                return false;
+            }
+            cell = mineCells[0];
+            paintHint.setColor(Color.BLUE);
+        }
+        hintCell = cell;
+
+        // Center the field if it is off screen
+        int left = (int) getXCoordinate(cell % gameBoardWidth);
+        int top = (int) getYCoordinate(cell / gameBoardWidth);
+        if (left < 0 || top < 0 || left + fieldWidth > getWidth() || top + fieldHeight > getHeight()) {
+            scrollViewport(left - (getWidth() - fieldWidth) / 2, top - (getHeight() - fieldHeight) / 2);
+        }
+
+        if (boardBitmap == null || boardDirty) {
+            boardDirty = true;
+            invalidate();
+        } else {
+            dirtyRect.setEmpty();
+            redrawField(cell);
+            if (!dirtyRect.isEmpty()) {
+                invalidate(dirtyRect);
+            }
+        }
+        return true;
     }
 
     /**
-     * Restarts the game and clears the screen
+     * Removes the outline of the last hint, if one is shown
+     */
+    private void clearHint() {
+        int cell = hintCell;
+        if (cell < 0) {
+            return;
+        }
+        hintCell = -1;
+        if (boardBitmap != null && !boardDirty && cell < gameBoardWidth * gameBoardHeight) {
+            dirtyRect.setEmpty();
+            redrawField(cell);
+            if (!dirtyRect.isEmpty()) {
+                invalidate(dirtyRect);
+            }
+        }
+    }
+
+    /**
+     * Shows a replay of the game recorded so far in place of the game in progress, one move
+     * at a time with stepReplay. The replay is played on a game of its own, and the clock of
+     * the game in progress is stopped until the replay is over.
+     *
+     * @return false if no game has been recorded on a board of the size shown
+     */
+    public boolean startReplay() {
+        MinesweeperModel game = GameHolder.getGame();
+        MoveJournal journal = game.getMoveJournal();
+        if (journal == null || !journal.isStarted() || journal.getWidth() != gameBoardWidth
+                || journal.getHeight() != gameBoardHeight) {
+            return false;
+        }
+        clearHint();
+        game.pauseClock();
+        replayGame = new MinesweeperModel(journal.getWidth(), journal.getHeight(), journal.getMines());
+        replayer = new MoveReplayer(journal, replayGame);
+        replayer.start();
+        boardDirty = true;
+        invalidate();
+        return true;
+    }
+
+    /**
+     * Shows the next move of the replay
+     *
+     * @return false if the replay is over, after which touches are handled again
+     */
+    public boolean stepReplay() {
+        if (replayer == null || !replayer.step()) {
+            endReplay();
+            return false;
+        }
+        invalidateChangedFields();
+        return true;
+    }
+
+    /**
+     * Drops the replay and shows the game in progress again, with its clock running on
+     */
+    private void endReplay() {
+        if (replayer == null) {
+            return;
+        }
+        replayer = null;
+        replayGame = null;
+        GameHolder.getGame().resumeClock();
+        updateTimer();
+        updateProbabilityOverlay();
+        boardDirty = true;
+        invalidate();
+    }
+
+    public boolean isReplaying() {
+        return replayer != null;
+    }
+
+    /**
+     * Takes back the last move and redraws the fields it changed
+     *
+     * @return false if there was no move to take back, the game is over, or a replay is running
+     */
+    public boolean undoMove() {
+        MinesweeperModel model = GameHolder.getGame();
+        if (replayer != null || !model.canUndo()) {
+            return false;
+        }
+        clearHint();
+        model.undo();
+        updateTimer();
+        updateProbabilityOverlay();
+        invalidateChangedFields();
+        return true;
+    }
+
+    /**
+     * Applies the last taken back move again and redraws the fields it changed
+     *
+     * @return false if there was no move to apply again, or a replay is running
+     */
+    public boolean redoMove() {
+        if (replayer != null || !GameHolder.getGame().canRedo()) {
+            return false;
+        }
+        clearHint();
+        GameHolder.getGame().redo();
+        updateTimer();
+        updateProbabilityOverlay();
+        invalidateChangedFields();
+        return true;
+    }
+
+    /**
+     * Restarts the game and clears the screen. Also runs from the constructor, before the
+     * activity has bound its views, so the activity refreshes its timer itself.
      */
     public void clearScreen() {
-        MinesweeperModel.getInstance().restartGame();
+        replayer = null;
+        replayGame = null;
+        hintCell = -1;
+        GameHolder.getGame().restartGame();
+        updateProbabilityOverlay();
+        boardDirty = true;
         invalidate();
     }
 
+    /**
+     * @return the game drawn on the board, which is the replay while one is running
+     */
+    private MinesweeperModel shownGame() {
+        return replayGame != null ? replayGame : GameHolder.getGame();
+    }
+
+    /**
+     * Lets the activity show the game time, after a move that may have started or stopped
+     * the game's clock
+     */
+    private void updateTimer() {
+        ((MainActivity) getContext()).updateTimer();
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         int w = MeasureSpec.getSize(widthMeasureSpec);
@@ -0,0 +1,155 @@
+package hu.ait.android.minesweeper.view;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import hu.ait.android.minesweeper.R;
+import hu.ait.android.minesweeper.metrics.Metrics;
+
+/**
+ * Single bitmap holding every image a field can show, pre-scaled to the current field size:
+ * the square, flag and mine tiles and the numbers 1 to 8. Fields are drawn by copying their
+ * slot out of the atlas, so drawing a frame allocates nothing.
+ */
+public class SpriteAtlas {
+
+    // Sprite slots in the atlas. The number n is in slot NUMBER_OFFSET + n.
+    public static final int SQUARE = 0;
+    public static final int FLAG = 1;
+    public static final int MINE = 2;
+    private static final int NUMBER_OFFSET = 2;
+    private static final int MAX_NUMBER = 8;
+    private static final int SPRITE_COUNT = NUMBER_OFFSET + MAX_NUMBER + 1;
+
+    /**
+     * Number of sprites in each row of the atlas bitmap
+     */
+    private static final int COLUMNS = 4;
+
+    // Image bitmaps as decoded from the resources
+    private final Bitmap squareImage;
+    private final Bitmap flagImage;
+    private final Bitmap mineImage;
+
+    /**
+     * Paint shared by every draw call
+     */
+    private final Paint paintSprite;
+
+    /**
+     * Bitmap holding all sprites, null until the first build
+     */
+    private Bitmap atlas;
+
+    // Size of one sprite in the atlas
+    private int spriteWidth;
+    private int spriteHeight;
+
+    // Reused source and destination rectangles
+    private final Rect srcRect = new Rect();
+    private final Rect dstRect = new Rect();
+
+    /**
+     * Decodes the tile images. The atlas itself is not built until build is called.
+     *
+     * @param resources resources holding the tile images
+     */
+    public SpriteAtlas(Resources resources) {
+        squareImage = BitmapFactory.decodeResource(resources, R.drawable.square);
+        flagImage = BitmapFactory.decodeResource(resources, R.drawable.flag);
+        mineImage = BitmapFactory.decodeResource(resources, R.drawable.mine);
+
+        paintSprite = new Paint();
+        paintSprite.setFilterBitmap(true);
+    }
+
+    /**
+     * Rebuilds the atlas for the given field size. Does nothing if the atlas already has that size.
+     *
+     * @param fieldWidth width of one field in pixels
+     * @param fieldHeight height of one field in pixels
+     * @param paintNumber style the numbers are drawn in
+     */
+    public void build(int fieldWidth, int fieldHeight, Paint paintNumber) {
+        if (fieldWidth <= 0 || fieldHeight <= 0) {
+            return;
+        }
+        if (atlas != null && fieldWidth == spriteWidth && fieldHeight == spriteHeight) {
+            return;
+        }
+        if (atlas != null) {
+            atlas.recycle();
+        }
+
+        spriteWidth = fieldWidth;
+        spriteHeight = fieldHeight;
+        int rows = (SPRITE_COUNT + COLUMNS - 1) / COLUMNS;
+        atlas = Bitmap.createBitmap(COLUMNS * spriteWidth, rows * spriteHeight,
+                Bitmap.Config.ARGB_8888);
+        Metrics.countBitmap();
+        atlas.eraseColor(Color.TRANSPARENT);
+        Canvas canvas = new Canvas(atlas);
+
+        drawImage(canvas, SQUARE, squareImage);
+        drawImage(canvas, FLAG, flagImage);
+        drawImage(canvas, MINE, mineImage);
+        for (int number = 1; number <= MAX_NUMBER; number++) {
+            setSlotRect(NUMBER_OFFSET + number, dstRect);
+            // Numbers sit on the bottom edge of the field and must not spill into other slots
+            canvas.save();
+            canvas.clipRect(dstRect);
+            canvas.drawText(String.valueOf(number), dstRect.left, dstRect.bottom, paintNumber);
+            canvas.restore();
+        }
+    }
+
+    /**
+     * @param number number of mines nearby, from 1 to 8
+     * @return the sprite slot of the given number
+     */
+    public static int numberSprite(int number) {
+        return NUMBER_OFFSET + number;
+    }
+
+    /**
+     * Draws the given sprite with its top left corner at the given position. The sprite is
+     * stretched if the given size differs from the size the atlas was built for.
+     *
+     * @param canvas Where the sprite will be drawn
+     * @param sprite slot of the sprite
+     * @param x X coordinate of the top left corner
+     * @param y Y coordinate of the top left corner
+     * @param width width to draw the sprite at
+     * @param height height to draw the sprite at
+     */
+    public void draw(Canvas canvas, int sprite, float x, float y, int width, int height) {
+        if (atlas == null) {
+            return;
+        }
+        setSlotRect(sprite, srcRect);
+        dstRect.set((int) x, (int) y, (int) x + width, (int) y + height);
+        canvas.drawBitmap(atlas, srcRect, dstRect, paintSprite);
+    }
+
+    /**
+     * Scales the given image into its slot of the atlas
+     */
+    private void drawImage(Canvas canvas, int sprite, Bitmap image) {
+        setSlotRect(sprite, dstRect);
+        canvas.drawBitmap(image, null, dstRect, paintSprite);
+    }
+
+    /**
+     * Sets the given rectangle to the area of the given slot in the atlas
+     */
+    private void setSlotRect(int sprite, Rect rect) {
+        int left = (sprite % COLUMNS) * spriteWidth;
+        int top = (sprite / COLUMNS) * spriteHeight;
+        rect.set(left, top, left + spriteWidth, top + spriteHeight);
+    }
+}
@@ -0,0 +1,142 @@
+package hu.ait.android.minesweeper.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChangeHistoryTest {
+
+    private ChangeHistory history;
+
+    @Before
+    public void setUp() {
+        history = new ChangeHistory();
+    }
+
+    /**
+     * Records a move that changes the given fields from UNREVEALED to NUMBER
+     */
+    private void move(int x, int y, int... cells) {
+        history.beginMove(x, y, false, false);
+        for (int cell : cells) {
+            history.recordChange(cell, MinesweeperModel.UNREVEALED, MinesweeperModel.NUMBER);
+        }
+        history.endMove(false);
+    }
+
+    @Test
+    public void emptyHistoryHasNothingToUndoOrRedo() {
+        assertFalse(history.canUndo());
+        assertFalse(history.canRedo());
+    }
+
+    @Test
+    public void undoGoesBackOneMoveAtATime() {
+        move(1, 2, 10, 11);
+        move(3, 4, 20);
+
+        int second = history.undoMove();
+        assertEquals(3, history.moveX(second));
+        assertEquals(4, history.moveY(second));
+        assertEquals(1, history.moveEnd(second) - history.moveStart(second));
+        assertEquals(20, history.cell(history.moveStart(second)));
+
+        int first = history.undoMove();
+        assertEquals(1, history.moveX(first));
+        assertEquals(2, history.moveEnd(first) - history.moveStart(first));
+        assertEquals(10, history.cell(history.moveStart(first)));
+        assertEquals(11, history.cell(history.moveStart(first) + 1));
+        assertFalse(history.canUndo());
+        assertTrue(history.canRedo());
+    }
+
+    @Test
+    public void redoAppliesTheUndoneMovesInOrder() {
+        move(1, 2, 10);
+        move(3, 4, 20);
+        history.undoMove();
+        history.undoMove();
+
+        assertEquals(1, history.moveX(history.redoMove()));
+        assertEquals(3, history.moveX(history.redoMove()));
+        assertFalse(history.canRedo());
+        assertTrue(history.canUndo());
+    }
+
+    @Test
+    public void aNewMoveDropsTheMovesThatCouldBeRedone() {
+        move(1, 2, 10);
+        move(3, 4, 20, 21);
+        move(5, 6, 30);
+        history.undoMove();
+        history.undoMove();
+
+        move(7, 8, 40);
+
+        assertFalse(history.canRedo());
+        int last = history.undoMove();
+        assertEquals(7, history.moveX(last));
+        assertEquals(1, history.moveEnd(last) - history.moveStart(last));
+        assertEquals(40, history.cell(history.moveStart(last)));
+        assertEquals(1, history.moveX(history.undoMove()));
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void keepsTheStatesBeforeAndAfter() {
+        history.beginMove(0, 0, true, false);
+        history.recordChange(5, MinesweeperModel.UNREVEALED, MinesweeperModel.FLAG);
+        history.endMove(false);
+
+        int move = history.undoMove();
+        assertTrue(history.isPlaceFlag(move));
+        assertEquals(MinesweeperModel.UNREVEALED, history.stateBefore(history.moveStart(move)));
+        assertEquals(MinesweeperModel.FLAG, history.stateAfter(history.moveStart(move)));
+    }
+
+    @Test
+    public void keepsWhetherTheGameWasLost() {
+        move(0, 0, 1);
+        history.beginMove(2, 2, false, false);
+        history.recordChange(20, MinesweeperModel.UNREVEALED, MinesweeperModel.MINE);
+        history.endMove(true);
+
+        int losing = history.undoMove();
+        assertFalse(history.isLostBefore(losing));
+        assertTrue(history.isLostAfter(losing));
+        int first = history.undoMove();
+        assertFalse(history.isLostAfter(first));
+    }
+
+    @Test
+    public void growsPastItsInitialCapacity() {
+        for (int i = 0; i < 100; i++) {
+            int[] cells = new int[i % 7 + 1];
+            for (int j = 0; j < cells.length; j++) {
+                cells[j] = i * 10 + j;
+            }
+            move(i, i, cells);
+        }
+
+        for (int i = 99; i >= 0; i--) {
+            int move = history.undoMove();
+            assertEquals(i, history.moveX(move));
+            assertEquals(i % 7 + 1, history.moveEnd(move) - history.moveStart(move));
+            assertEquals(i * 10, history.cell(history.moveStart(move)));
+        }
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void clearForgetsEveryMove() {
+        move(1, 1, 10);
+        move(2, 2, 20);
+        history.undoMove();
+
+        history.clear();
+
+        assertFalse(history.canUndo());
+        assertFalse(history.canRedo());
+    }
+}
@@ -0,0 +1,138 @@
+package hu.ait.android.minesweeper.model;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+import static org.junit.Assert.*;
+
+public class GameSnapshotTest {
+
+    /**
+     * Offset of the time in the header, after the magic, version, flags, size and seed
+     */
+    private static final int TIME_OFFSET = 4 + 2 + 1 + 4 * 3 + 8;
+
+    private static MinesweeperModel playedGame() {
+        MinesweeperModel game = new MinesweeperModel(16, 16, 40);
+        game.generateMines(5, 5, true, 42L);
+        game.onTouchHandler(5, 5, false);
+        // Flag the first mine
+        for (int cell = 0; cell < 16 * 16; cell++) {
+            if (game.isMine(cell)) {
+                game.onTouchHandler(cell % 16, cell / 16, true);
+                break;
+            }
+        }
+        return game;
+    }
+
+    private static byte[] write(MinesweeperModel game) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GameSnapshot.write(game, Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    private static MinesweeperModel read(byte[] snapshot) throws IOException {
+        MinesweeperModel game = new MinesweeperModel(9, 9, 10);
+        GameSnapshot.read(game, Channels.newChannel(new ByteArrayInputStream(snapshot)));
+        return game;
+    }
+
+    private static void assertSameBoard(MinesweeperModel expected, MinesweeperModel actual) {
+        assertEquals(expected.getGameBoardWidth(), actual.getGameBoardWidth());
+        assertEquals(expected.getGameBoardHeight(), actual.getGameBoardHeight());
+        assertEquals(expected.getNumberOfMines(), actual.getNumberOfMines());
+        for (int cell = 0; cell < expected.getGameBoardWidth() * expected.getGameBoardHeight(); cell++) {
+            assertEquals("content of " + cell, expected.getFieldContent(cell), actual.getFieldContent(cell));
+            assertEquals("mine at " + cell, expected.isMine(cell), actual.isMine(cell));
+        }
+    }
+
+    @Test
+    public void roundTripRestoresTheGame() throws Exception {
+        MinesweeperModel game = playedGame();
+
+        MinesweeperModel restored = read(write(game));
+
+        assertSameBoard(game, restored);
+        assertEquals(game.getLayoutSeed(), restored.getLayoutSeed());
+        assertEquals(game.getMoveCount(), restored.getMoveCount());
+        assertEquals(game.getRevealedCount(), restored.getRevealedCount());
+        assertEquals(game.getCorrectFlagCount(), restored.getCorrectFlagCount());
+        assertEquals(game.isLost(), restored.isLost());
+        assertTrue(restored.areMinesGenerated());
+    }
+
+    @Test
+    public void roundTripKeepsALostGameLost() throws Exception {
+        MinesweeperModel game = new MinesweeperModel(9, 9, 10);
+        game.generateMines(0, 0, true, 7L);
+        for (int cell = 0; cell < 81; cell++) {
+            if (game.isMine(cell)) {
+                game.onTouchHandler(cell % 9, cell / 9, false);
+                break;
+            }
+        }
+        assertTrue(game.isLost());
+
+        MinesweeperModel restored = read(write(game));
+
+        assertTrue(restored.isLost());
+        assertSameBoard(game, restored);
+    }
+
+    @Test
+    public void readsVersion1SavesWithTheTimeInSeconds() throws Exception {
+        MinesweeperModel game = playedGame();
+        byte[] current = write(game);
+
+        // Version 1 had an int of seconds where version 2 has a long of milliseconds
+        ByteBuffer old = ByteBuffer.allocate(current.length - 4);
+        old.put(current, 0, TIME_OFFSET);
+        old.putShort(4, (short) 1);
+        old.putInt(42);
+        old.put(current, TIME_OFFSET + 8, current.length - TIME_OFFSET - 8);
+
+        MinesweeperModel restored = read(old.array());
+
+        assertSameBoard(game, restored);
+        assertEquals(game.getMoveCount(), restored.getMoveCount());
+        assertTrue(restored.getElapsedMillis() >= 42000);
+        assertTrue(restored.getElapsedMillis() < 43000);
+    }
+
+    @Test
+    public void rejectsAnythingElseAndKeepsTheGame() throws Exception {
+        MinesweeperModel game = new MinesweeperModel(9, 9, 10);
+        try {
+            GameSnapshot.read(game, Channels.newChannel(new ByteArrayInputStream(new byte[64])));
+            fail("read a snapshot of zeros");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(9, game.getGameBoardWidth());
+        assertEquals(10, game.getNumberOfMines());
+    }
+
+    @Test
+    public void truncatedFieldsRestartTheGame() throws Exception {
+        byte[] snapshot = write(playedGame());
+        byte[] truncated = new byte[snapshot.length - 10];
+        System.arraycopy(snapshot, 0, truncated, 0, truncated.length);
+
+        MinesweeperModel game = new MinesweeperModel(9, 9, 10);
+        try {
+            GameSnapshot.read(game, Channels.newChannel(new ByteArrayInputStream(truncated)));
+            fail("read a truncated snapshot");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(0, game.getMoveCount());
+        assertEquals(0, game.getRevealedCount());
+    }
+}
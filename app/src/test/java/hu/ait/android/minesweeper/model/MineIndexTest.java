@@ -0,0 +1,142 @@
+package hu.ait.android.minesweeper.model;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MineIndexTest {
+
+    private static final int CELLS = 100000;
+
+    /**
+     * @return an index that uses the hash set layout
+     */
+    private static MineIndex sparseIndex() {
+        MineIndex index = new MineIndex(CELLS, 200);
+        assertTrue(index.isSparse());
+        return index;
+    }
+
+    /**
+     * @return an index that uses the bitset layout
+     */
+    private static MineIndex denseIndex() {
+        MineIndex index = new MineIndex(CELLS, CELLS / 4);
+        assertFalse(index.isSparse());
+        return index;
+    }
+
+    private static void assertSameMines(BitSet expected, MineIndex index) {
+        assertEquals(expected.cardinality(), index.size());
+        for (int cell = 0; cell < CELLS; cell++) {
+            assertEquals("mine at " + cell, expected.get(cell), index.contains(cell));
+        }
+        int[] cells = index.toArray();
+        assertEquals(expected.cardinality(), cells.length);
+        int i = 0;
+        for (int cell = expected.nextSetBit(0); cell >= 0; cell = expected.nextSetBit(cell + 1)) {
+            assertEquals(cell, cells[i++]);
+        }
+    }
+
+    /**
+     * Applies the same random adds and removes to both layouts and a BitSet
+     */
+    private static void checkLayoutsAgree(long seed, int operations) {
+        Random random = new Random(seed);
+        BitSet expected = new BitSet(CELLS);
+        MineIndex sparse = sparseIndex();
+        MineIndex dense = denseIndex();
+        for (int i = 0; i < operations; i++) {
+            // Clustered cells, so probe sequences collide and removals shift entries back
+            int cell = random.nextInt(2) == 0 ? random.nextInt(CELLS) : random.nextInt(256);
+            boolean mine = expected.get(cell);
+            if (random.nextInt(3) == 0) {
+                assertEquals(mine, sparse.remove(cell));
+                assertEquals(mine, dense.remove(cell));
+                expected.clear(cell);
+            } else if (expected.cardinality() < 200) {
+                assertEquals(!mine, sparse.add(cell));
+                assertEquals(!mine, dense.add(cell));
+                expected.set(cell);
+            }
+        }
+        assertSameMines(expected, sparse);
+        assertSameMines(expected, dense);
+    }
+
+    @Test
+    public void layoutsAgreeOnRandomAddsAndRemoves() {
+        for (long seed = 0; seed < 20; seed++) {
+            checkLayoutsAgree(seed, 2000);
+        }
+    }
+
+    @Test
+    public void addingTwiceKeepsOneMine() {
+        MineIndex sparse = sparseIndex();
+        MineIndex dense = denseIndex();
+        assertTrue(sparse.add(42));
+        assertTrue(dense.add(42));
+        assertFalse(sparse.add(42));
+        assertFalse(dense.add(42));
+        assertEquals(1, sparse.size());
+        assertEquals(1, dense.size());
+    }
+
+    @Test
+    public void removingAMissingCellChangesNothing() {
+        MineIndex sparse = sparseIndex();
+        MineIndex dense = denseIndex();
+        sparse.add(7);
+        dense.add(7);
+        assertFalse(sparse.remove(8));
+        assertFalse(dense.remove(8));
+        assertTrue(sparse.contains(7));
+        assertTrue(dense.contains(7));
+    }
+
+    @Test
+    public void toArrayIsAscending() {
+        int[] cells = {CELLS - 1, 0, 5000, 63, 64, 12345};
+        int[] sorted = {0, 63, 64, 5000, 12345, CELLS - 1};
+        MineIndex sparse = sparseIndex();
+        MineIndex dense = denseIndex();
+        for (int cell : cells) {
+            sparse.add(cell);
+            dense.add(cell);
+        }
+        assertArrayEquals(sorted, sparse.toArray());
+        assertArrayEquals(sorted, dense.toArray());
+    }
+
+    @Test
+    public void clearEmptiesBothLayouts() {
+        MineIndex sparse = sparseIndex();
+        MineIndex dense = denseIndex();
+        for (int cell = 0; cell < 100; cell++) {
+            sparse.add(cell * 31);
+            dense.add(cell * 31);
+        }
+        sparse.clear();
+        dense.clear();
+        assertSameMines(new BitSet(CELLS), sparse);
+        assertSameMines(new BitSet(CELLS), dense);
+    }
+
+    @Test
+    public void fitsOnlyTheBoardAndLayoutItWasMadeFor() {
+        MineIndex sparse = sparseIndex();
+        MineIndex dense = denseIndex();
+        assertTrue(sparse.fits(CELLS, 200));
+        assertTrue(dense.fits(CELLS, CELLS / 4));
+        assertFalse(sparse.fits(CELLS + 1, 200));
+        assertFalse(sparse.fits(CELLS, 2000));
+        assertFalse(sparse.fits(CELLS, CELLS / 4));
+        assertFalse(dense.fits(CELLS, 200));
+        assertTrue(dense.fits(CELLS, CELLS / 2));
+    }
+}
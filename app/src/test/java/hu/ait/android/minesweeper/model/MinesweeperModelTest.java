@@ -0,0 +1,246 @@
+package hu.ait.android.minesweeper.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MinesweeperModelTest {
+
+    private static int countMines(MinesweeperModel game) {
+        int mines = 0;
+        for (int cell = 0; cell < game.getGameBoardWidth() * game.getGameBoardHeight(); cell++) {
+            if (game.isMine(cell)) {
+                mines++;
+            }
+        }
+        return mines;
+    }
+
+    private static int countMinesAround(MinesweeperModel game, int x, int y) {
+        int mines = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if ((dx != 0 || dy != 0) && game.isMine(x + dx, y + dy)) {
+                    mines++;
+                }
+            }
+        }
+        return mines;
+    }
+
+    /**
+     * Reveals the given field the way the rules describe it, recursing into the neighbors of
+     * every empty field
+     */
+    private static void revealRecursively(MinesweeperModel game, short[] board, int x, int y) {
+        int width = game.getGameBoardWidth();
+        if (x < 0 || y < 0 || x >= width || y >= game.getGameBoardHeight()
+                || board[y * width + x] != MinesweeperModel.UNREVEALED) {
+            return;
+        }
+        if (countMinesAround(game, x, y) > 0) {
+            board[y * width + x] = MinesweeperModel.NUMBER;
+            return;
+        }
+        board[y * width + x] = MinesweeperModel.EMPTY;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                revealRecursively(game, board, x + dx, y + dy);
+            }
+        }
+    }
+
+    /**
+     * Checks the running counters against a count over every field
+     */
+    private static void assertCountersMatchBoard(String message, MinesweeperModel game) {
+        int[] counts = new int[MinesweeperModel.MINE + 1];
+        int correctFlags = 0;
+        for (int cell = 0; cell < game.getGameBoardWidth() * game.getGameBoardHeight(); cell++) {
+            short content = game.getFieldContent(cell);
+            counts[content]++;
+            if (content == MinesweeperModel.FLAG && game.isMine(cell)) {
+                correctFlags++;
+            }
+        }
+        for (short state = MinesweeperModel.UNREVEALED; state <= MinesweeperModel.MINE; state++) {
+            assertEquals(message + ", fields in state " + state, counts[state], game.gameBoardCounter(state));
+        }
+        assertEquals(message + ", revealed", counts[MinesweeperModel.EMPTY] + counts[MinesweeperModel.NUMBER],
+                game.getRevealedCount());
+        assertEquals(message + ", correct flags", correctFlags, game.getCorrectFlagCount());
+    }
+
+    /**
+     * @param mine true for a mine, flagged or not, false for an unrevealed safe field
+     * @return a random field of the given kind, or -1 if none is left
+     */
+    private static int pickField(MinesweeperModel game, Random random, boolean mine) {
+        int cells = game.getGameBoardWidth() * game.getGameBoardHeight();
+        int start = random.nextInt(cells);
+        for (int i = 0; i < cells; i++) {
+            int cell = (start + i) % cells;
+            short content = game.getFieldContent(cell);
+            if (game.isMine(cell) == mine
+                    && (content == MinesweeperModel.UNREVEALED || content == MinesweeperModel.FLAG)) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void firstRevealIsSafeAndOpensItsNeighbors() {
+        int[][] boards = {{9, 9, 10}, {16, 16, 40}, {30, 16, 99}};
+        Random random = new Random(1);
+        for (int[] board : boards) {
+            MinesweeperModel game = new MinesweeperModel(board[0], board[1], board[2]);
+            for (int i = 0; i < 200; i++) {
+                game.restartGame();
+                int x = random.nextInt(board[0]);
+                int y = random.nextInt(board[1]);
+                game.onTouchHandler(x, y, false);
+
+                String where = board[0] + "x" + board[1] + " at " + x + "," + y;
+                assertFalse(where, game.isLost());
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        assertFalse(where + ", mine next to it", game.isMine(x + dx, y + dy));
+                    }
+                }
+                assertEquals(where, MinesweeperModel.EMPTY, game.getFieldContent(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void crowdedBoardOnlyKeepsTheTouchedFieldSafe() {
+        // Too few fields left to keep all eight neighbors of the touch clear
+        MinesweeperModel game = new MinesweeperModel(4, 4, 10);
+        for (int i = 0; i < 100; i++) {
+            game.restartGame();
+            game.onTouchHandler(1, 2, false);
+            assertFalse(game.isLost());
+            assertFalse(game.isMine(1, 2));
+            assertEquals(10, countMines(game));
+        }
+
+        // Every field but the touched one holds a mine
+        game = new MinesweeperModel(5, 5, 24);
+        game.onTouchHandler(4, 0, false);
+        assertFalse(game.isLost());
+        assertEquals(MinesweeperModel.NUMBER, game.getFieldContent(4, 0));
+        for (int cell = 0; cell < 25; cell++) {
+            assertEquals("mine at " + cell, cell != 4, game.isMine(cell));
+        }
+    }
+
+    @Test
+    public void generatesExactlyTheNumberOfMines() {
+        int[][] boards = {{9, 9, 10}, {30, 16, 99}, {8, 8, 55}, {10, 10, 91}, {100, 100, 30}, {100, 100, 9000}};
+        Random random = new Random(2);
+        for (int[] board : boards) {
+            MinesweeperModel game = new MinesweeperModel(board[0], board[1], board[2]);
+            for (int i = 0; i < 50; i++) {
+                game.restartGame();
+                int x = random.nextInt(board[0]);
+                int y = random.nextInt(board[1]);
+                boolean keepSafe = random.nextBoolean();
+                game.generateMines(x, y, keepSafe, random.nextLong());
+
+                String where = board[0] + "x" + board[1] + "/" + board[2];
+                assertEquals(where, board[2], countMines(game));
+                if (keepSafe) {
+                    assertFalse(where, game.isMine(x, y));
+                }
+                for (int row = 0; row < board[1]; row++) {
+                    for (int col = 0; col < board[0]; col++) {
+                        assertEquals(where + " around " + col + "," + row, countMinesAround(game, col, row),
+                                game.numberOfMinesNearby(col, row));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sameSeedGivesTheSameMines() {
+        MinesweeperModel first = new MinesweeperModel(30, 16, 99);
+        MinesweeperModel second = new MinesweeperModel(30, 16, 99);
+        first.generateMines(3, 4, true, 7L);
+        // A game that is reused for the layout must not keep anything of the previous one
+        second.generateMines(20, 10, true, 8L);
+        second.restartGame();
+        second.generateMines(3, 4, true, 7L);
+        for (int cell = 0; cell < 30 * 16; cell++) {
+            assertEquals("mine at " + cell, first.isMine(cell), second.isMine(cell));
+        }
+    }
+
+    @Test
+    public void cascadesMatchANaiveRecursiveReveal() {
+        int[][] boards = {{9, 9, 10}, {30, 16, 99}, {60, 60, 100}};
+        for (int[] board : boards) {
+            int width = board[0];
+            MinesweeperModel game = new MinesweeperModel(width, board[1], board[2]);
+            for (long seed = 0; seed < 20; seed++) {
+                Random random = new Random(seed);
+                game.restartGame();
+                game.generateMines(width / 2, board[1] / 2, true, seed);
+                short[] expected = new short[width * board[1]];
+
+                int cell = (board[1] / 2) * width + width / 2;
+                while (cell >= 0) {
+                    game.onTouchHandler(cell % width, cell / width, false);
+                    revealRecursively(game, expected, cell % width, cell / width);
+                    for (int i = 0; i < expected.length; i++) {
+                        assertEquals("seed " + seed + ", field " + i, expected[i], game.getFieldContent(i));
+                    }
+                    cell = pickField(game, random, false);
+                }
+                assertEquals(expected.length - board[2], game.getRevealedCount());
+            }
+        }
+    }
+
+    @Test
+    public void countersMatchTheBoardAfterRevealsFlagsAndUndo() {
+        MinesweeperModel game = new MinesweeperModel(16, 16, 40);
+        Random random = new Random(3);
+        int undone = 0;
+        for (int i = 0; i < 5000; i++) {
+            if (game.isLost() || game.isWon()) {
+                game.restartGame();
+                assertCountersMatchBoard("after restart", game);
+            }
+            String move;
+            int operation = random.nextInt(20);
+            int mine = pickField(game, random, true);
+            int safe = pickField(game, random, false);
+            if (operation < 4) {
+                move = "undo";
+                if (game.undo()) {
+                    undone++;
+                }
+            } else if (operation < 6) {
+                move = "redo";
+                game.redo();
+            } else if (operation < 12 && mine >= 0) {
+                // Places a flag on a mine, or takes it back
+                move = "flag " + mine;
+                game.onTouchHandler(mine % 16, mine / 16, true);
+            } else if (operation == 12) {
+                // Any touch, which may lose the game
+                move = "touch";
+                game.onTouchHandler(random.nextInt(16), random.nextInt(16), random.nextBoolean());
+            } else {
+                move = "reveal " + safe;
+                game.onTouchHandler(safe % 16, safe / 16, false);
+            }
+            assertCountersMatchBoard("move " + i + ", " + move, game);
+        }
+        assertTrue(undone > 0);
+    }
+}
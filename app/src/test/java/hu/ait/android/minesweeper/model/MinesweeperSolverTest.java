@@ -0,0 +1,312 @@
+package hu.ait.android.minesweeper.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MinesweeperSolverTest {
+
+    /**
+     * Builds a board from rows of characters: '*' is a hidden mine, 'F' a flagged mine, '#' a
+     * hidden safe field and '.' a revealed field. As in a real game, no revealed field may
+     * have zero mines nearby and a hidden neighbor.
+     */
+    private static MinesweeperModel board(String... rows) {
+        int width = rows[0].length();
+        int height = rows.length;
+        int mines = 0;
+        for (String row : rows) {
+            for (char c : row.toCharArray()) {
+                if (c == '*' || c == 'F') {
+                    mines++;
+                }
+            }
+        }
+        MinesweeperModel game = new MinesweeperModel(width, height, mines);
+        game.beginRestore(width, height, mines, 0L, 0L, 1, false, false, false, true);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int cell = y * width + x;
+                char c = rows[y].charAt(x);
+                if (c == '*' || c == 'F') {
+                    assertTrue(game.restoreMine(cell));
+                }
+                if (c == 'F') {
+                    game.restoreFieldState(cell, MinesweeperModel.FLAG);
+                } else if (c == '.') {
+                    game.restoreFieldState(cell, MinesweeperModel.NUMBER);
+                }
+            }
+        }
+        assertTrue(game.finishRestore());
+        return game;
+    }
+
+    private static MinesweeperSolver solve(MinesweeperModel game) {
+        MinesweeperSolver solver = new MinesweeperSolver(game, false);
+        solver.update();
+        return solver;
+    }
+
+    @Test
+    public void deductionsBuildOnEachOther() {
+        MinesweeperSolver solver = solve(board(
+                "*.#",
+                "..#",
+                "###"));
+
+        assertArrayEquals(new int[]{0}, solver.getMineCells());
+        assertArrayEquals(new int[]{2, 5, 6, 7, 8}, sorted(solver.getSafeCells()));
+    }
+
+    @Test
+    public void aNumberWithAsManyHiddenFieldsAsMinesProvesThemMines() {
+        MinesweeperSolver solver = solve(board(
+                "*.",
+                ".."));
+
+        assertTrue(solver.isKnownMine(0));
+        assertEquals(-1, solver.findSafeCell());
+        assertEquals(0, solver.getUnknownMineCount());
+    }
+
+    @Test
+    public void theSubsetRuleSolvesOneTwoOne() {
+        MinesweeperSolver solver = solve(board(
+                "*#*",
+                "..."));
+
+        assertTrue(solver.isKnownMine(0));
+        assertTrue(solver.isKnownMine(2));
+        assertTrue(solver.isKnownSafe(1));
+        assertEquals(1, solver.findSafeCell());
+    }
+
+    @Test
+    public void flagsCountAsKnownMines() {
+        // A second mine, out of the way, keeps the game from being won
+        MinesweeperSolver solver = solve(board(
+                "F.##",
+                "..##",
+                "###*"));
+
+        assertTrue(solver.isKnownMine(0));
+        assertArrayEquals(new int[]{2, 6, 8, 9, 10}, sorted(solver.getSafeCells()));
+        assertEquals(0, solver.getMineCells().length);
+    }
+
+    @Test
+    public void aFiftyFiftyProvesNothing() {
+        MinesweeperSolver solver = solve(board(
+                "*#",
+                ".."));
+
+        assertEquals(-1, solver.findSafeCell());
+        assertFalse(solver.isKnownMine(0));
+        assertFalse(solver.isKnownMine(1));
+        assertEquals(1, solver.getUnknownMineCount());
+    }
+
+    @Test
+    public void deductionsAreAlwaysRightWhilePlaying() {
+        Random random = new Random(1);
+        for (int round = 0; round < 50; round++) {
+            MinesweeperModel game = new MinesweeperModel(16, 16, 40);
+            game.generateMines(8, 8, true, random.nextLong());
+            game.onTouchHandler(8, 8, false);
+            MinesweeperSolver solver = new MinesweeperSolver(game, false);
+            while (!game.isLost() && !game.isWon()) {
+                solver.update();
+                for (int cell = 0; cell < 16 * 16; cell++) {
+                    if (solver.isKnownMine(cell)) {
+                        assertTrue("proven mine at " + cell, game.isMine(cell));
+                    }
+                    if (solver.isKnownSafe(cell)) {
+                        assertFalse("proven safe at " + cell, game.isMine(cell));
+                    }
+                }
+                int safe = solver.findSafeCell();
+                if (safe < 0) {
+                    break;
+                }
+                game.onTouchHandler(safe % 16, safe / 16, false);
+                assertFalse(game.isLost());
+            }
+        }
+    }
+
+    @Test
+    public void findsEveryFieldTheNumbersProve() {
+        Random random = new Random(2);
+        for (int round = 0; round < 200; round++) {
+            MinesweeperModel game = new MinesweeperModel(7, 7, 9);
+            game.generateMines(3, 3, random.nextBoolean(), random.nextLong());
+            game.onTouchHandler(3, 3, false);
+            MinesweeperSolver solver = new MinesweeperSolver(game, false);
+            // A few random safe moves, so the solver also has to keep up incrementally
+            for (int move = 0; move < 3 && !game.isLost() && !game.isWon(); move++) {
+                solver.update();
+                int cell = random.nextInt(49);
+                if (!game.isMine(cell) && game.getFieldContent(cell) == MinesweeperModel.UNREVEALED) {
+                    game.onTouchHandler(cell % 7, cell / 7, false);
+                }
+            }
+            if (game.isLost() || game.isWon()) {
+                continue;
+            }
+            solver.update();
+            assertTrue(solver.isComplete());
+
+            boolean[][] proven = provenByNumbers(game);
+            for (int cell = 0; cell < 49; cell++) {
+                if (proven[0][cell]) {
+                    assertTrue("missed safe field " + cell, solver.isKnownSafe(cell));
+                }
+                if (proven[1][cell]) {
+                    assertTrue("missed mine " + cell, solver.isKnownMine(cell));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void reportsComponentsTooLargeToEnumerate() {
+        // Every field around the ring of numbers is in one component, too large to enumerate
+        MinesweeperModel game = board(
+                "##############",
+                "#**####*##*##*",
+                "###*#*####*#*#",
+                "##*........*##",
+                "#*#.#**##*.#*#",
+                "###.###*##.###",
+                "*#*.##*###.#**",
+                "#*#.#*###*.#*#",
+                "**#.#**##*.**#",
+                "*#*.*#*###.#**",
+                "###........###",
+                "#*#######*####",
+                "*#*###**######",
+                "####*###*###*#");
+        MinesweeperSolver solver = solve(game);
+
+        assertFalse(solver.isComplete());
+        assertEquals(0, solver.getSafeCells().length);
+        assertEquals(0, solver.getMineCells().length);
+
+        // The component stays dirty, so a later update still reports it
+        solver.update();
+        assertFalse(solver.isComplete());
+    }
+
+    /**
+     * Brute force: tries every way to place mines on the unrevealed fields next to numbers that
+     * fits every number, ignoring the total number of mines
+     *
+     * @return per field, whether it is safe in every placement, and whether it is a mine in every one
+     */
+    private static boolean[][] provenByNumbers(MinesweeperModel game) {
+        int width = game.getGameBoardWidth();
+        int cells = width * game.getGameBoardHeight();
+        int[] variables = new int[cells];
+        int variableCount = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (game.getFieldContent(cell) == MinesweeperModel.UNREVEALED && nextToNumber(game, cell)) {
+                variables[variableCount++] = cell;
+            }
+        }
+        int[] mineCounts = new int[cells];
+        int[] solutions = new int[1];
+        boolean[] mines = new boolean[cells];
+        place(game, variables, variableCount, 0, mines, mineCounts, solutions);
+
+        boolean[][] proven = new boolean[2][cells];
+        for (int i = 0; i < variableCount; i++) {
+            proven[0][variables[i]] = mineCounts[variables[i]] == 0;
+            proven[1][variables[i]] = mineCounts[variables[i]] == solutions[0];
+        }
+        return proven;
+    }
+
+    private static void place(MinesweeperModel game, int[] variables, int count, int next, boolean[] mines,
+                              int[] mineCounts, int[] solutions) {
+        if (!fits(game, mines, variables, count, next)) {
+            return;
+        }
+        if (next == count) {
+            solutions[0]++;
+            for (int i = 0; i < count; i++) {
+                if (mines[variables[i]]) {
+                    mineCounts[variables[i]]++;
+                }
+            }
+            return;
+        }
+        mines[variables[next]] = true;
+        place(game, variables, count, next + 1, mines, mineCounts, solutions);
+        mines[variables[next]] = false;
+        place(game, variables, count, next + 1, mines, mineCounts, solutions);
+    }
+
+    /**
+     * @return false if some number already has too many mines, or can no longer get enough
+     * from the fields still to be decided
+     */
+    private static boolean fits(MinesweeperModel game, boolean[] mines, int[] variables, int count, int next) {
+        int width = game.getGameBoardWidth();
+        int height = game.getGameBoardHeight();
+        for (int cell = 0; cell < width * height; cell++) {
+            if (game.getFieldContent(cell) != MinesweeperModel.NUMBER) {
+                continue;
+            }
+            int placed = 0;
+            int open = 0;
+            for (int y = Math.max(0, cell / width - 1); y <= Math.min(height - 1, cell / width + 1); y++) {
+                for (int x = Math.max(0, cell % width - 1); x <= Math.min(width - 1, cell % width + 1); x++) {
+                    int neighbor = y * width + x;
+                    short content = game.getFieldContent(neighbor);
+                    if (content == MinesweeperModel.FLAG || mines[neighbor]) {
+                        placed++;
+                    } else if (content == MinesweeperModel.UNREVEALED && isUndecided(variables, count, next, neighbor)) {
+                        open++;
+                    }
+                }
+            }
+            int target = game.numberOfMinesNearby(cell % width, cell / width);
+            if (placed > target || placed + open < target) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUndecided(int[] variables, int count, int next, int cell) {
+        for (int i = next; i < count; i++) {
+            if (variables[i] == cell) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean nextToNumber(MinesweeperModel game, int cell) {
+        int width = game.getGameBoardWidth();
+        int height = game.getGameBoardHeight();
+        for (int y = Math.max(0, cell / width - 1); y <= Math.min(height - 1, cell / width + 1); y++) {
+            for (int x = Math.max(0, cell % width - 1); x <= Math.min(width - 1, cell % width + 1); x++) {
+                if (game.getFieldContent(y * width + x) == MinesweeperModel.NUMBER) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int[] sorted(int[] cells) {
+        int[] copy = cells.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,164 @@
+package hu.ait.android.minesweeper.statistics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class StatisticsStoreTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("statistics", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * Records games of difficulty 1, every other one won, taking 1000 plus its number milliseconds
+     */
+    private void recordGames(int from, int to) throws IOException {
+        StatisticsStore store = StatisticsStore.open(directory);
+        for (int i = from; i < to; i++) {
+            store.record(1, i % 2 == 0, 1000 + i, 10, 20);
+        }
+        store.close();
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                read += in.read(bytes, read, bytes.length - read);
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private static void writeFile(File file, byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void assertGames(int played) throws IOException {
+        StatisticsStore store = StatisticsStore.open(directory);
+        try {
+            assertEquals(played, store.getRecordCount());
+            StatisticsStore.Aggregate aggregate = store.getAggregate(1);
+            assertEquals(played, aggregate.getGamesPlayed());
+            assertEquals((played + 1) / 2, aggregate.getGamesWon());
+            assertEquals(played * 10L, aggregate.getTotalClicks());
+            assertEquals(played * 20L, aggregate.getTotalFieldsRevealed());
+            int[] bestTimes = aggregate.getBestTimes();
+            assertEquals(Math.min(StatisticsStore.TOP_K, (played + 1) / 2), bestTimes.length);
+            for (int i = 0; i < bestTimes.length; i++) {
+                assertEquals(1000 + 2 * i, bestTimes[i]);
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void newStoreIsEmpty() throws Exception {
+        assertGames(0);
+    }
+
+    @Test
+    public void recordedGamesSurviveReopening() throws Exception {
+        recordGames(0, 25);
+
+        assertGames(25);
+    }
+
+    @Test
+    public void keepsTheBestTimesFastestFirst() throws Exception {
+        StatisticsStore store = StatisticsStore.open(directory);
+        int[] times = {500, 300, 900, 100, 700};
+        for (int time : times) {
+            store.record(2, true, time, 1, 1);
+        }
+        store.record(2, false, 50, 1, 1);
+
+        assertArrayEquals(new int[]{100, 300, 500, 700, 900}, store.getAggregate(2).getBestTimes());
+        assertEquals(500, store.getAggregate(2).getAverageWinMillis());
+        store.close();
+    }
+
+    @Test
+    public void dropsATornRecordAtTheEndOfTheLog() throws Exception {
+        recordGames(0, 3);
+        RandomAccessFile log = new RandomAccessFile(new File(directory, StatisticsStore.LOG_FILE), "rw");
+        try {
+            log.seek(log.length());
+            log.write(new byte[]{1, 1, 0, 0, 0});
+        } finally {
+            log.close();
+        }
+
+        assertGames(3);
+        recordGames(3, 4);
+        assertGames(4);
+    }
+
+    @Test
+    public void rebuildsAMissingIndexFromTheLog() throws Exception {
+        recordGames(0, 30);
+        assertTrue(new File(directory, StatisticsStore.INDEX_FILE).delete());
+
+        assertGames(30);
+        assertTrue(new File(directory, StatisticsStore.INDEX_FILE).exists());
+    }
+
+    @Test
+    public void rebuildsACorruptIndexFromTheLog() throws Exception {
+        recordGames(0, 30);
+        File indexFile = new File(directory, StatisticsStore.INDEX_FILE);
+        writeFile(indexFile, new byte[(int) indexFile.length()]);
+
+        assertGames(30);
+    }
+
+    @Test
+    public void catchesUpWithRecordsTheIndexMissed() throws Exception {
+        recordGames(0, 5);
+        File indexFile = new File(directory, StatisticsStore.INDEX_FILE);
+        byte[] staleIndex = readFile(indexFile);
+        recordGames(5, 12);
+        writeFile(indexFile, staleIndex);
+
+        assertGames(12);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAFileThatIsNotAGameLog() throws Exception {
+        writeFile(new File(directory, StatisticsStore.LOG_FILE), "not a game log".getBytes("UTF-8"));
+
+        StatisticsStore.open(directory);
+    }
+}
@@ -0,0 +1,128 @@
+package hu.ait.android.minesweeper.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the hot paths of MinesweeperModel, across board sizes and mine densities.
+ * Run with the gc profiler (the jmh task does) to get the allocation rate next to each score.
+ *
+ * Lives in the model's package so it can generate a fixed layout without a touch.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ModelBenchmark {
+
+    /**
+     * Number of random fields each lookup benchmark reads per invocation
+     */
+    private static final int LOOKUPS = 1024;
+
+    /**
+     * Square boards, from the built-in easy board up to a million fields
+     */
+    @Param({"5", "9", "30", "100", "1000"})
+    public int size;
+
+    /**
+     * Fraction of fields that are mines. 0.12 on the 5x5 board is the built-in 3 mines.
+     */
+    @Param({"0.12", "0.16", "0.2"})
+    public double density;
+
+    private MinesweeperModel game;
+    private int mines;
+    private int centerX;
+    private int centerY;
+
+    // Random fields for the lookup benchmarks
+    private final int[] xs = new int[LOOKUPS];
+    private final int[] ys = new int[LOOKUPS];
+
+    @Setup
+    public void setUp() {
+        mines = Math.max(1, (int) Math.round(size * size * density));
+        game = new MinesweeperModel(size, size, mines);
+        centerX = size / 2;
+        centerY = size / 2;
+        game.restartGame();
+        game.generateMines(centerX, centerY, true, 42L);
+        game.onTouchHandler(centerX, centerY, false);
+
+        Random random = new Random(7);
+        for (int i = 0; i < LOOKUPS; i++) {
+            xs[i] = random.nextInt(size);
+            ys[i] = random.nextInt(size);
+        }
+    }
+
+    /**
+     * Clearing the board and its mines for a new game, through resetModel and resetMines
+     */
+    @Benchmark
+    public MinesweeperModel restartGame() {
+        game.restartGame();
+        return game;
+    }
+
+    /**
+     * Generating the mines and revealing the opening around the first touch, which runs
+     * the revealAllAdjacentFields cascade
+     */
+    @Benchmark
+    public int firstRevealCascade() {
+        game.restartGame();
+        game.generateMines(centerX, centerY, true, 42L);
+        game.onTouchHandler(centerX, centerY, false);
+        return game.getRevealedCount();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int isMine() {
+        int count = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (game.isMine(xs[i], ys[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int numberOfMinesNearby() {
+        int sum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            sum += game.numberOfMinesNearby(xs[i], ys[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public boolean isWon() {
+        return game.isWon();
+    }
+
+    @Benchmark
+    public int gameBoardCounter() {
+        return game.gameBoardCounter(MinesweeperModel.UNREVEALED);
+    }
+}
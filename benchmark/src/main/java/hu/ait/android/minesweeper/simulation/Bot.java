@@ -0,0 +1,48 @@
+package hu.ait.android.minesweeper.simulation;
+
+import hu.ait.android.minesweeper.model.MinesweeperModel;
+
+/**
+ * Strategy playing games in the Simulator. Each worker thread creates its own bot with a
+ * Factory and reuses it for every game it plays, so a bot never needs to be thread-safe.
+ */
+public interface Bot {
+
+    /**
+     * Creates the bot of one worker thread
+     */
+    interface Factory {
+        Bot create();
+    }
+
+    /**
+     * A move chosen by a bot, reused for every move so choosing one allocates nothing
+     */
+    class Move {
+        public int x;
+        public int y;
+        public boolean placeFlag;
+
+        public void set(int x, int y, boolean placeFlag) {
+            this.x = x;
+            this.y = y;
+            this.placeFlag = placeFlag;
+        }
+    }
+
+    /**
+     * Called before the first move of every game
+     *
+     * @param game the restarted game the bot will play
+     */
+    void newGame(MinesweeperModel game);
+
+    /**
+     * Chooses the next move. The game is neither lost nor won, and some field without a mine
+     * is still unrevealed.
+     *
+     * @param game the game being played
+     * @param move where to write the move
+     */
+    void nextMove(MinesweeperModel game, Move move);
+}
@@ -0,0 +1,28 @@
+package hu.ait.android.minesweeper.simulation;
+
+import java.util.Random;
+
+import hu.ait.android.minesweeper.model.MinesweeperModel;
+
+/**
+ * Reveals a random unrevealed field every move. The baseline every other bot should beat.
+ */
+public class RandomBot implements Bot {
+
+    private final Random random = new Random();
+
+    @Override
+    public void newGame(MinesweeperModel game) {
+    }
+
+    @Override
+    public void nextMove(MinesweeperModel game, Move move) {
+        int x;
+        int y;
+        do {
+            x = random.nextInt(game.getGameBoardWidth());
+            y = random.nextInt(game.getGameBoardHeight());
+        } while (game.getFieldContent(x, y) != MinesweeperModel.UNREVEALED);
+        move.set(x, y, false);
+    }
+}
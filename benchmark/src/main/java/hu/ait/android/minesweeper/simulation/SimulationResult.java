@@ -0,0 +1,95 @@
+package hu.ait.android.minesweeper.simulation;
+
+import java.util.Locale;
+
+/**
+ * Totals of a batch of simulated games. Each worker fills its own and the totals of the
+ * batches are merged, so counting never contends between threads.
+ */
+public class SimulationResult {
+
+    private long games;
+    private long wins;
+    private long clicks;
+    private long cascades;
+    private long cascadeFields;
+    private int largestCascade;
+
+    /**
+     * Counts a finished game
+     *
+     * @param won true if the game was won
+     * @param gameClicks number of moves the game took
+     */
+    void addGame(boolean won, int gameClicks) {
+        games++;
+        if (won) {
+            wins++;
+        }
+        clicks += gameClicks;
+    }
+
+    /**
+     * Counts a reveal that opened more than the touched field
+     *
+     * @param fields number of fields it revealed
+     */
+    void addCascade(int fields) {
+        cascades++;
+        cascadeFields += fields;
+        largestCascade = Math.max(largestCascade, fields);
+    }
+
+    /**
+     * Adds the totals of another batch to this one
+     *
+     * @return this result
+     */
+    SimulationResult merge(SimulationResult other) {
+        games += other.games;
+        wins += other.wins;
+        clicks += other.clicks;
+        cascades += other.cascades;
+        cascadeFields += other.cascadeFields;
+        largestCascade = Math.max(largestCascade, other.largestCascade);
+        return this;
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public double getWinRate() {
+        return games == 0 ? 0 : (double) wins / games;
+    }
+
+    public double getAverageClicks() {
+        return games == 0 ? 0 : (double) clicks / games;
+    }
+
+    /**
+     * @return average number of cascades, reveals opening more than one field, per game
+     */
+    public double getAverageCascades() {
+        return games == 0 ? 0 : (double) cascades / games;
+    }
+
+    /**
+     * @return average number of fields a cascade reveals
+     */
+    public double getAverageCascadeSize() {
+        return cascades == 0 ? 0 : (double) cascadeFields / cascades;
+    }
+
+    public int getLargestCascade() {
+        return largestCascade;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "games %d, win rate %.2f%%, clicks %.1f, cascades %.1f, cascade size %.1f (largest %d)",
+                games, getWinRate() * 100, getAverageClicks(), getAverageCascades(), getAverageCascadeSize(),
+                largestCascade);
+    }
+}
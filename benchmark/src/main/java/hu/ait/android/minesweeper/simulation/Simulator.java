@@ -0,0 +1,168 @@
+package hu.ait.android.minesweeper.simulation;
+
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import hu.ait.android.minesweeper.model.MinesweeperModel;
+
+/**
+ * Headless Monte Carlo simulator playing many games of one board setting with a bot, to see
+ * how a difficulty actually plays.
+ *
+ * The games are split into batches on a work-stealing ForkJoinPool spanning every core. Each
+ * worker thread keeps its own game and bot and reuses them for every game it plays, so a run
+ * is bound by the CPU rather than by allocation or garbage collection.
+ *
+ * A game counts as won once every field without a mine is revealed, whether or not the mines
+ * are flagged.
+ */
+public class Simulator {
+
+    /**
+     * Number of games below which a batch is played instead of split
+     */
+    private static final int BATCH_SIZE = 256;
+
+    private final ForkJoinPool pool;
+    private final Bot.Factory botFactory;
+
+    /**
+     * The game and bot of each worker thread
+     */
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+        @Override
+        protected Worker initialValue() {
+            return new Worker(botFactory.create());
+        }
+    };
+
+    /**
+     * @param pool the pool to play on
+     * @param botFactory creates the bot of each worker thread
+     */
+    public Simulator(ForkJoinPool pool, Bot.Factory botFactory) {
+        this.pool = pool;
+        this.botFactory = botFactory;
+    }
+
+    /**
+     * Plays the given number of games and waits for the totals
+     *
+     * @param width number of fields wide the game board is
+     * @param height number of fields tall the game board is
+     * @param mines number of mines in the game
+     * @param games number of games to play
+     * @return totals of every game played
+     */
+    public SimulationResult run(int width, int height, int mines, long games) {
+        return pool.invoke(new Batch(workers, width, height, mines, games));
+    }
+
+    /**
+     * Range of games, played directly if small enough and split in two otherwise
+     */
+    private static class Batch extends RecursiveTask<SimulationResult> {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The simulator's workers, shared by every batch of a run
+         */
+        private final transient ThreadLocal<Worker> workers;
+        private final int width;
+        private final int height;
+        private final int mines;
+        private final long games;
+
+        Batch(ThreadLocal<Worker> workers, int width, int height, int mines, long games) {
+            this.workers = workers;
+            this.width = width;
+            this.height = height;
+            this.mines = mines;
+            this.games = games;
+        }
+
+        @Override
+        protected SimulationResult compute() {
+            if (games <= BATCH_SIZE) {
+                return workers.get().play(width, height, mines, (int) games);
+            }
+            Batch first = new Batch(workers, width, height, mines, games / 2);
+            Batch second = new Batch(workers, width, height, mines, games - games / 2);
+            first.fork();
+            return second.compute().merge(first.join());
+        }
+    }
+
+    /**
+     * Game and bot of one worker thread
+     */
+    private static class Worker {
+        private final MinesweeperModel game = new MinesweeperModel();
+        private final Bot bot;
+        private final Bot.Move move = new Bot.Move();
+
+        Worker(Bot bot) {
+            this.bot = bot;
+        }
+
+        SimulationResult play(int width, int height, int mines, int games) {
+            if (game.getGameBoardWidth() != width || game.getGameBoardHeight() != height
+                    || game.getNumberOfMines() != mines) {
+                game.setCustomGameBoard(width, height, mines);
+            }
+            int safeFields = width * height - mines;
+            SimulationResult result = new SimulationResult();
+            for (int i = 0; i < games; i++) {
+                game.restartGame();
+                bot.newGame(game);
+                int clicks = 0;
+                while (!game.isLost() && !game.isWon() && game.getRevealedCount() < safeFields) {
+                    bot.nextMove(game, move);
+                    int revealedBefore = game.getRevealedCount();
+                    game.onTouchHandler(move.x, move.y, move.placeFlag);
+                    clicks++;
+                    int revealed = game.getRevealedCount() - revealedBefore;
+                    if (revealed > 1) {
+                        result.addCascade(revealed);
+                    }
+                }
+                result.addGame(!game.isLost(), clicks);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Simulates every built-in difficulty and prints the results
+     *
+     * @param args optional number of games per difficulty and bot, "solver" or "random"
+     */
+    public static void main(String[] args) {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+        final boolean random = args.length > 1 && args[1].equals("random");
+        Bot.Factory factory = new Bot.Factory() {
+            @Override
+            public Bot create() {
+                return random ? new RandomBot() : new SolverBot();
+            }
+        };
+
+        int[][] difficulties = {
+                {MinesweeperModel.EASY_BOARD_SIZE, MinesweeperModel.EASY_BOARD_SIZE, MinesweeperModel.EASY_MINE_NUMBER},
+                {MinesweeperModel.MEDIUM_BOARD_SIZE, MinesweeperModel.MEDIUM_BOARD_SIZE, MinesweeperModel.MEDIUM_MINE_NUMBER},
+                {MinesweeperModel.DIFFICULT_BOARD_SIZE, MinesweeperModel.DIFFICULT_BOARD_SIZE, MinesweeperModel.DIFFICULT_MINE_NUMBER},
+                {MinesweeperModel.EXPERT_BOARD_WIDTH, MinesweeperModel.EXPERT_BOARD_HEIGHT, MinesweeperModel.EXPERT_MINE_NUMBER},
+        };
+        ForkJoinPool pool = new ForkJoinPool();
+        Simulator simulator = new Simulator(pool, factory);
+        for (int[] difficulty : difficulties) {
+            long start = System.nanoTime();
+            SimulationResult result = simulator.run(difficulty[0], difficulty[1], difficulty[2], games);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf(Locale.US, "%dx%d/%d: %s, %.0f games/s%n", difficulty[0], difficulty[1], difficulty[2],
+                    result, result.getGames() / seconds);
+        }
+        pool.shutdown();
+    }
+}
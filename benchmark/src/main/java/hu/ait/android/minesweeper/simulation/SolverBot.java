@@ -0,0 +1,48 @@
+package hu.ait.android.minesweeper.simulation;
+
+import java.util.Random;
+
+import hu.ait.android.minesweeper.model.MinesweeperModel;
+import hu.ait.android.minesweeper.model.MinesweeperSolver;
+
+/**
+ * Plays like a careful player: reveals the fields the solver proves safe, and only guesses a
+ * random field the solver knows nothing about when there are none. Mines are never flagged,
+ * since the Simulator counts a game as won once every other field is revealed.
+ */
+public class SolverBot implements Bot {
+
+    private final Random random = new Random();
+    private MinesweeperSolver solver;
+
+    @Override
+    public void newGame(MinesweeperModel game) {
+        if (solver == null || solver.getGame() != game) {
+            // Enumerating on the calling thread, the simulator already keeps every core busy
+            solver = new MinesweeperSolver(game, false);
+        }
+    }
+
+    @Override
+    public void nextMove(MinesweeperModel game, Move move) {
+        int width = game.getGameBoardWidth();
+        // The first move has nothing to deduce from
+        if (game.getMoveCount() > 0) {
+            solver.update();
+            int safeCell = solver.findSafeCell();
+            if (safeCell >= 0) {
+                move.set(safeCell % width, safeCell / width, false);
+                return;
+            }
+        }
+
+        int x;
+        int y;
+        do {
+            x = random.nextInt(width);
+            y = random.nextInt(game.getGameBoardHeight());
+        } while (game.getFieldContent(x, y) != MinesweeperModel.UNREVEALED
+                || (game.getMoveCount() > 0 && solver.isKnownMine(y * width + x)));
+        move.set(x, y, false);
+    }
+}
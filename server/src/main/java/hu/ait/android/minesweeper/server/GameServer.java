@@ -0,0 +1,279 @@
+package hu.ait.android.minesweeper.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless server hosting many independent games over a line-based protocol on a local socket.
+ * Each command is one line and gets one reply line:
+ *
+ * NEW width height mines   ->  OK id
+ * REVEAL id x y            ->  OK PLAYING|WON|LOST changedCount x,y,state,nearby ...
+ * FLAG id x y              ->  OK PLAYING|WON|LOST changedCount x,y,state,nearby ...
+ * RESTART id               ->  OK PLAYING
+ * CLOSE id                 ->  OK
+ *
+ * A move's reply lists every field it changed, as described in GameSession.touch.
+ *
+ * Errors are answered with "ERR message", including a NEW beyond the limit on sessions or on
+ * the fields of all their boards together. Sessions without a command for the idle timeout
+ * are evicted.
+ *
+ * Each connection is handled on its own thread. On a JVM with virtual threads, those are used,
+ * so the number of connections is not limited by platform threads; on older JVMs, a cached
+ * thread pool is used instead.
+ */
+public class GameServer {
+
+    public static final int DEFAULT_PORT = 7420;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    public static final int DEFAULT_MAX_SESSIONS = 100000;
+    private static final long WHEEL_TICK_MILLIS = 1000;
+
+    /**
+     * Most memory a field of a hosted game takes: its state, its entries in the changed fields
+     * and reveal stack, and its undo history
+     */
+    private static final int BYTES_PER_CELL = 16;
+
+    /**
+     * Longest wait before accepting again after accept failed, such as when out of file descriptors
+     */
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+    private final ServerSocket serverSocket;
+    private final SessionStore sessions;
+    private final TimerWheel idleWheel;
+    private final ExecutorService connectionExecutor;
+    private final ScheduledExecutorService evictionExecutor;
+
+    private volatile boolean running = true;
+
+    /**
+     * Opens the server socket on the loopback interface, with the default session limits.
+     * Call serve to start accepting.
+     *
+     * @param port port to listen on, or 0 for any free port
+     * @param idleTimeoutMillis time after its last command a session is evicted
+     * @throws IOException if the socket cannot be opened
+     */
+    public GameServer(int port, long idleTimeoutMillis) throws IOException {
+        this(port, idleTimeoutMillis, DEFAULT_MAX_SESSIONS, defaultMaxCells());
+    }
+
+    /**
+     * Opens the server socket on the loopback interface. Call serve to start accepting.
+     *
+     * @param port port to listen on, or 0 for any free port
+     * @param idleTimeoutMillis time after its last command a session is evicted
+     * @param maxSessions largest number of live sessions
+     * @param maxCells largest number of fields on the boards of all live sessions together
+     * @throws IOException if the socket cannot be opened
+     */
+    public GameServer(int port, long idleTimeoutMillis, int maxSessions, long maxCells) throws IOException {
+        serverSocket = new ServerSocket(port, 1024, InetAddress.getByName(null));
+        idleWheel = new TimerWheel(WHEEL_TICK_MILLIS, idleTimeoutMillis, System.currentTimeMillis());
+        sessions = new SessionStore(idleWheel, maxSessions, maxCells);
+        idleWheel.setEvictionListener(new TimerWheel.EvictionListener() {
+            @Override
+            public void onEvict(GameSession session) {
+                sessions.remove(session);
+            }
+        });
+        connectionExecutor = newConnectionExecutor();
+        evictionExecutor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * @return number of fields the games may take together, so they fill at most half the heap
+     */
+    public static long defaultMaxCells() {
+        return Runtime.getRuntime().maxMemory() / 2 / BYTES_PER_CELL;
+    }
+
+    /**
+     * Creates an executor running each task on a new virtual thread if the JVM supports them,
+     * or a cached thread pool otherwise
+     */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public SessionStore getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Accepts connections until close is called or the socket is closed. Blocks the calling
+     * thread. A failing accept is retried after a delay doubling on each consecutive failure.
+     */
+    public void serve() {
+        evictionExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                idleWheel.advance(System.currentTimeMillis());
+            }
+        }, WHEEL_TICK_MILLIS, WHEEL_TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+        long backoffMillis = 0;
+        while (running && !serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+                backoffMillis = 0;
+            } catch (IOException e) {
+                // Thrown when close shuts the socket, otherwise retried after backing off
+                if (!running || serverSocket.isClosed()) {
+                    break;
+                }
+                backoffMillis = Math.min(MAX_ACCEPT_BACKOFF_MILLIS, Math.max(1, backoffMillis * 2));
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+                continue;
+            }
+            connectionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handleConnection(socket);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops accepting connections and shuts the worker threads down
+     */
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        connectionExecutor.shutdownNow();
+        evictionExecutor.shutdownNow();
+    }
+
+    /**
+     * Answers the commands of one connection until the client disconnects
+     */
+    private void handleConnection(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+            String line;
+            while ((line = in.readLine()) != null) {
+                out.write(execute(line));
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Client went away, nothing to answer
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    /**
+     * Runs a single command line
+     *
+     * @param line the command
+     * @return the reply line
+     */
+    public String execute(String line) {
+        String[] parts = line.trim().split(" +");
+        long now = System.currentTimeMillis();
+        try {
+            String command = parts[0].toUpperCase();
+            if (command.equals("NEW")) {
+                expectArguments(parts, 3);
+                GameSession session = sessions.create(Integer.parseInt(parts[1]),
+                        Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), now);
+                return "OK " + session.getId();
+            }
+
+            if (command.equals("REVEAL") || command.equals("FLAG")) {
+                expectArguments(parts, 3);
+                GameSession session = findSession(parts[1]);
+                return "OK " + session.touch(Integer.parseInt(parts[2]), Integer.parseInt(parts[3]),
+                        command.equals("FLAG"), now);
+            }
+
+            if (command.equals("RESTART")) {
+                expectArguments(parts, 1);
+                return "OK " + findSession(parts[1]).restart(now);
+            }
+
+            if (command.equals("CLOSE")) {
+                expectArguments(parts, 1);
+                sessions.remove(findSession(parts[1]));
+                return "OK";
+            }
+
+            return "ERR Unknown command " + parts[0];
+        } catch (IllegalArgumentException e) {
+            // Also covers NumberFormatException
+            return "ERR " + e.getMessage();
+        } catch (IllegalStateException e) {
+            // A limit of the server was reached
+            return "ERR " + e.getMessage();
+        }
+    }
+
+    private static void expectArguments(String[] parts, int count) {
+        if (parts.length != count + 1) {
+            throw new IllegalArgumentException(parts[0] + " takes " + count + " arguments");
+        }
+    }
+
+    private GameSession findSession(String id) {
+        GameSession session = sessions.get(Long.parseLong(id));
+        if (session == null) {
+            throw new IllegalArgumentException("No session " + id);
+        }
+        return session;
+    }
+
+    /**
+     * Runs the server in the foreground
+     *
+     * @param args optional port to listen on
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        GameServer server = new GameServer(port, DEFAULT_IDLE_TIMEOUT_MILLIS);
+        System.out.println("Minesweeper server listening on port " + server.getPort());
+        server.serve();
+    }
+}
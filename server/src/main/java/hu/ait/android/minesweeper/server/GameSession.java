@@ -0,0 +1,126 @@
+package hu.ait.android.minesweeper.server;
+
+import hu.ait.android.minesweeper.model.MinesweeperModel;
+
+/**
+ * One game hosted by the GameServer. Commands for the same session may arrive on different
+ * connection threads, so every call into the game synchronizes on the session, as the
+ * MinesweeperModel concurrency contract requires.
+ */
+public class GameSession {
+
+    // Results of a command, sent back to the client
+    public static final String PLAYING = "PLAYING";
+    public static final String WON = "WON";
+    public static final String LOST = "LOST";
+
+    private final long id;
+    private final MinesweeperModel game;
+
+    /**
+     * Number of fields on the board, which never changes size
+     */
+    private final int cellCount;
+
+    /**
+     * Time of the last command, in milliseconds. Read by the eviction thread without locking.
+     */
+    private volatile long lastAccessMillis;
+
+    /**
+     * Set once the session has been evicted or closed, so the timer wheel drops it
+     */
+    private volatile boolean removed = false;
+
+    /**
+     * @param id unique id of the session
+     * @param game the hosted game
+     * @param nowMillis current time in milliseconds
+     */
+    public GameSession(long id, MinesweeperModel game, long nowMillis) {
+        this.id = id;
+        this.game = game;
+        this.cellCount = game.getGameBoardWidth() * game.getGameBoardHeight();
+        this.lastAccessMillis = nowMillis;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    public long getLastAccessMillis() {
+        return lastAccessMillis;
+    }
+
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    public void markRemoved() {
+        removed = true;
+    }
+
+    /**
+     * Reveals or flags the given field
+     *
+     * @param x column of the field
+     * @param y row of the field
+     * @param placeFlag true to place or remove a flag, false to try the field
+     * @param nowMillis current time in milliseconds
+     * @return the game state after the move, followed by the number of fields it changed and
+     * each changed field as "x,y,state,nearby". The state is one of the MinesweeperModel field
+     * constants, and nearby is the number of mines around a revealed NUMBER field, 0 otherwise.
+     * @throws IllegalArgumentException if the field is outside the board
+     */
+    public synchronized String touch(int x, int y, boolean placeFlag, long nowMillis) {
+        lastAccessMillis = nowMillis;
+        int width = game.getGameBoardWidth();
+        if (x < 0 || y < 0 || x >= width || y >= game.getGameBoardHeight()) {
+            throw new IllegalArgumentException("Field outside the board: " + x + "," + y);
+        }
+        if (game.isLost() || game.isWon()) {
+            return status() + " 0";
+        }
+        game.onTouchHandler(x, y, placeFlag);
+
+        int[] changedCells = game.getChangedCells();
+        int changedCellCount = game.getChangedCellCount();
+        StringBuilder reply = new StringBuilder(16 + changedCellCount * 12);
+        reply.append(status()).append(' ').append(changedCellCount);
+        for (int i = 0; i < changedCellCount; i++) {
+            int col = changedCells[i] % width;
+            int row = changedCells[i] / width;
+            short state = game.getFieldContent(col, row);
+            // Only revealed numbers show their count, the others would give the mines away
+            int nearby = state == MinesweeperModel.NUMBER ? game.numberOfMinesNearby(col, row) : 0;
+            reply.append(' ').append(col).append(',').append(row).append(',').append(state)
+                    .append(',').append(nearby);
+        }
+        return reply.toString();
+    }
+
+    /**
+     * Starts a new game on the same board size
+     *
+     * @param nowMillis current time in milliseconds
+     * @return the game state after the restart
+     */
+    public synchronized String restart(long nowMillis) {
+        lastAccessMillis = nowMillis;
+        game.restartGame();
+        return status();
+    }
+
+    private String status() {
+        if (game.isLost()) {
+            return LOST;
+        } else if (game.isWon()) {
+            return WON;
+        }
+        return PLAYING;
+    }
+}
@@ -0,0 +1,151 @@
+package hu.ait.android.minesweeper.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Loopback load generator for the GameServer. Starts a server in the same process, opens a
+ * number of client connections that each create many sessions, then sends random reveal,
+ * flag and restart commands and reports throughput and latency percentiles. Only the reveal and
+ * flag commands are timed; the restart that follows a finished game is not.
+ *
+ * Arguments: connections, sessions per connection, commands per connection, board width,
+ * board height, mines. All are optional.
+ */
+public class LoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        int connections = argument(args, 0, 64);
+        int sessionsPerConnection = argument(args, 1, 500);
+        int commandsPerConnection = argument(args, 2, 20000);
+        final int width = argument(args, 3, 30);
+        final int height = argument(args, 4, 16);
+        final int mines = argument(args, 5, 99);
+
+        final GameServer server = new GameServer(0, GameServer.DEFAULT_IDLE_TIMEOUT_MILLIS);
+        Thread serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.serve();
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        Client[] clients = new Client[connections];
+        Thread[] threads = new Thread[connections];
+        for (int i = 0; i < connections; i++) {
+            clients[i] = new Client(server.getPort(), i, sessionsPerConnection, commandsPerConnection,
+                    width, height, mines);
+            threads[i] = new Thread(clients[i]);
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        long[] latencies = new long[connections * commandsPerConnection];
+        int count = 0;
+        for (Client client : clients) {
+            if (client.error != null) {
+                throw client.error;
+            }
+            System.arraycopy(client.latencies, 0, latencies, count, client.latencies.length);
+            count += client.latencies.length;
+        }
+        Arrays.sort(latencies, 0, count);
+
+        System.out.println("Live sessions:   " + server.getSessions().size());
+        System.out.println("Commands:        " + count);
+        System.out.printf("Throughput:      %.0f commands/s%n", count / (elapsedNanos / 1e9));
+        System.out.printf("Latency p50:     %.1f us%n", latencies[count / 2] / 1e3);
+        System.out.printf("Latency p99:     %.1f us%n", latencies[(int) (count * 0.99)] / 1e3);
+        System.out.printf("Latency max:     %.1f us%n", latencies[count - 1] / 1e3);
+        server.close();
+    }
+
+    private static int argument(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    /**
+     * One client connection, creating its sessions and then sending random commands
+     */
+    private static class Client implements Runnable {
+        private final int port;
+        private final int sessionCount;
+        private final int width;
+        private final int height;
+        private final int mines;
+        private final Random random;
+        private final long[] latencies;
+        private Exception error;
+
+        Client(int port, int seed, int sessionCount, int commandCount, int width, int height, int mines) {
+            this.port = port;
+            this.sessionCount = sessionCount;
+            this.width = width;
+            this.height = height;
+            this.mines = mines;
+            this.random = new Random(seed);
+            this.latencies = new long[commandCount];
+        }
+
+        @Override
+        public void run() {
+            try {
+                Socket socket = new Socket(InetAddress.getByName(null), port);
+                try {
+                    socket.setTcpNoDelay(true);
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                    Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+
+                    long[] ids = new long[sessionCount];
+                    for (int i = 0; i < sessionCount; i++) {
+                        ids[i] = Long.parseLong(call(in, out, "NEW " + width + " " + height + " " + mines).substring(3));
+                    }
+
+                    for (int i = 0; i < latencies.length; i++) {
+                        long id = ids[random.nextInt(sessionCount)];
+                        String command = random.nextInt(8) == 0 ? "FLAG " : "REVEAL ";
+                        String line = command + id + " " + random.nextInt(width) + " " + random.nextInt(height);
+                        long start = System.nanoTime();
+                        String reply = call(in, out, line);
+                        latencies[i] = System.nanoTime() - start;
+                        if (!reply.startsWith("OK PLAYING")) {
+                            call(in, out, "RESTART " + id);
+                        }
+                    }
+                } finally {
+                    socket.close();
+                }
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+
+        private static String call(BufferedReader in, Writer out, String command) throws IOException {
+            out.write(command);
+            out.write('\n');
+            out.flush();
+            String reply = in.readLine();
+            if (reply == null || reply.startsWith("ERR")) {
+                throw new IOException("Command " + command + " failed: " + reply);
+            }
+            return reply;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package hu.ait.android.minesweeper.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hu.ait.android.minesweeper.model.MinesweeperModel;
+
+/**
+ * Sharded map of the live game sessions. Session ids are spread over independent shards so
+ * connections working on different games rarely touch the same part of the map.
+ *
+ * The number of sessions and the fields of all their boards together are capped, so clients
+ * creating games cannot run the server out of memory.
+ */
+public class SessionStore {
+
+    /**
+     * Number of shards, a power of two
+     */
+    private static final int SHARD_COUNT = 64;
+
+    private final ConcurrentHashMap<Long, GameSession>[] shards;
+
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    private final int maxSessions;
+    private final long maxCells;
+
+    /**
+     * Number of live sessions, counted when created rather than when added to a shard
+     */
+    private final AtomicInteger sessionCount = new AtomicInteger();
+
+    /**
+     * Fields on the boards of the live sessions
+     */
+    private final AtomicLong cellCount = new AtomicLong();
+
+    /**
+     * Evicts sessions that have been idle too long
+     */
+    private final TimerWheel idleWheel;
+
+    /**
+     * @param idleWheel timer wheel that evicts sessions from this store
+     * @param maxSessions largest number of live sessions
+     * @param maxCells largest number of fields on the boards of all live sessions together
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SessionStore(TimerWheel idleWheel, int maxSessions, long maxCells) {
+        this.idleWheel = idleWheel;
+        this.maxSessions = maxSessions;
+        this.maxCells = maxCells;
+        shards = new ConcurrentHashMap[SHARD_COUNT];
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards[i] = new ConcurrentHashMap<Long, GameSession>();
+        }
+    }
+
+    /**
+     * Creates a session hosting a new game
+     *
+     * @param width number of fields wide the game board is
+     * @param height number of fields tall the game board is
+     * @param mines number of mines in the game
+     * @param nowMillis current time in milliseconds
+     * @return the new session
+     * @throws IllegalArgumentException if the board size or number of mines is invalid
+     * @throws IllegalStateException if the store already holds as many sessions or fields as
+     * it may
+     */
+    public GameSession create(int width, int height, int mines, long nowMillis) {
+        // Invalid sizes reserve nothing and are rejected by the model
+        long cells = (long) Math.max(0, width) * Math.max(0, height);
+        if (sessionCount.incrementAndGet() > maxSessions) {
+            sessionCount.decrementAndGet();
+            throw new IllegalStateException("Too many sessions");
+        }
+        if (cellCount.addAndGet(cells) > maxCells) {
+            release(cells);
+            throw new IllegalStateException("Too many fields on the boards of all sessions");
+        }
+
+        MinesweeperModel game;
+        try {
+            game = new MinesweeperModel(width, height, mines);
+        } catch (IllegalArgumentException e) {
+            release(cells);
+            throw e;
+        }
+        GameSession session = new GameSession(nextId.getAndIncrement(), game, nowMillis);
+        shardFor(session.getId()).put(session.getId(), session);
+        idleWheel.schedule(session);
+        return session;
+    }
+
+    /**
+     * @param id id of the session
+     * @return the session, or null if there is no live session with that id
+     */
+    public GameSession get(long id) {
+        return shardFor(id).get(id);
+    }
+
+    /**
+     * Removes the given session, if it is still live
+     *
+     * @param session session to remove
+     */
+    public void remove(GameSession session) {
+        session.markRemoved();
+        if (shardFor(session.getId()).remove(session.getId(), session)) {
+            release(session.getCellCount());
+        }
+    }
+
+    /**
+     * Frees the room a session took in the limits
+     *
+     * @param cells number of fields on the session's board
+     */
+    private void release(long cells) {
+        cellCount.addAndGet(-cells);
+        sessionCount.decrementAndGet();
+    }
+
+    /**
+     * @return number of fields on the boards of the live sessions
+     */
+    public long getCellCount() {
+        return cellCount.get();
+    }
+
+    /**
+     * @return number of live sessions
+     */
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<Long, GameSession> shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    private ConcurrentHashMap<Long, GameSession> shardFor(long id) {
+        int h = (int) (id ^ (id >>> 32));
+        h ^= h >>> 16;
+        return shards[h & (SHARD_COUNT - 1)];
+    }
+}
@@ -0,0 +1,97 @@
+package hu.ait.android.minesweeper.server;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timer wheel evicting idle sessions. Each session sits in the slot of its idle
+ * deadline. Commands only update the session's last access time, so they never touch the
+ * wheel; when the wheel reaches a slot it evicts the sessions that really are idle and moves
+ * the others to the slot of their new deadline.
+ */
+public class TimerWheel {
+
+    /**
+     * Receives the sessions the wheel evicts
+     */
+    public interface EvictionListener {
+        void onEvict(GameSession session);
+    }
+
+    private final long tickMillis;
+    private final long idleTimeoutMillis;
+    private final ConcurrentLinkedQueue<GameSession>[] slots;
+
+    private EvictionListener listener;
+
+    /**
+     * Index of the next slot to process, only used by the ticking thread
+     */
+    private long currentTick;
+
+    /**
+     * @param tickMillis time covered by one slot, in milliseconds
+     * @param idleTimeoutMillis time after the last command a session is evicted
+     * @param nowMillis current time in milliseconds
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long tickMillis, long idleTimeoutMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        // One more slot than the timeout needs, so a deadline never lands in the slot being processed
+        int slotCount = (int) (idleTimeoutMillis / tickMillis) + 2;
+        slots = new ConcurrentLinkedQueue[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new ConcurrentLinkedQueue<GameSession>();
+        }
+        currentTick = nowMillis / tickMillis;
+    }
+
+    public void setEvictionListener(EvictionListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Puts the session in the slot of its idle deadline
+     *
+     * @param session session to watch
+     */
+    public void schedule(GameSession session) {
+        long deadlineTick = (session.getLastAccessMillis() + idleTimeoutMillis) / tickMillis + 1;
+        slots[(int) (deadlineTick % slots.length)].add(session);
+    }
+
+    /**
+     * Processes every slot up to the given time. Must only be called from one thread.
+     *
+     * @param nowMillis current time in milliseconds
+     * @return number of sessions evicted
+     */
+    public int advance(long nowMillis) {
+        int evicted = 0;
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick <= targetTick) {
+            ConcurrentLinkedQueue<GameSession> slot = slots[(int) (currentTick % slots.length)];
+            // Only process the sessions already in the slot, rescheduled ones may land here again
+            int pending = slot.size();
+            for (int i = 0; i < pending; i++) {
+                GameSession session = slot.poll();
+                if (session == null) {
+                    break;
+                }
+                if (session.isRemoved()) {
+                    continue;
+                }
+                if (nowMillis - session.getLastAccessMillis() >= idleTimeoutMillis) {
+                    evicted++;
+                    if (listener != null) {
+                        listener.onEvict(session);
+                    }
+                } else {
+                    schedule(session);
+                }
+            }
+            currentTick++;
+        }
+        return evicted;
+    }
+}